@@ -0,0 +1,80 @@
+package com.vitor.benchmark;
+
+import com.vitor.model.CurrencyRegistry;
+import com.vitor.model.UserAccount;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * CAS cells of a single account hammered from several threads.
+ * One account per group, so all threads of a group fight over the same cell.
+ */
+@State(Scope.Group)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class AccountBenchmark {
+
+    private static final BigDecimal AMOUNT = new BigDecimal("1.25");
+    private static final long AMOUNT_UNITS = 125;
+
+    @Param({"false", "true"})
+    public boolean fixedPoint;
+
+    private UserAccount account;
+
+    @Setup(Level.Iteration)
+    public void setUp() {
+        account = new UserAccount(new CurrencyRegistry(List.of("money"), List.of(2), fixedPoint));
+        // Withdrawals never run dry, so every call does the same work
+        if (fixedPoint) {
+            account.setUnits(0, Long.MAX_VALUE / 2);
+        } else {
+            account.setBalance(0, new BigDecimal("1000000000000.00"));
+        }
+    }
+
+    // Deposits and withdrawals racing on one balance
+
+    @Benchmark
+    @Group("contended")
+    @GroupThreads(2)
+    public Object deposit() {
+        return fixedPoint ? account.addUnits(0, AMOUNT_UNITS) : account.add(0, AMOUNT);
+    }
+
+    @Benchmark
+    @Group("contended")
+    @GroupThreads(2)
+    public Object withdraw() {
+        return fixedPoint ? account.tryWithdrawUnits(0, AMOUNT_UNITS) : account.tryWithdraw(0, AMOUNT);
+    }
+
+    // Placeholder-style reads while a payout keeps writing
+
+    @Benchmark
+    @Group("readUnderWriters")
+    @GroupThreads(3)
+    public Object read() {
+        return fixedPoint ? account.getUnits(0) : account.getBalance(0);
+    }
+
+    @Benchmark
+    @Group("readUnderWriters")
+    @GroupThreads(1)
+    public Object write() {
+        return fixedPoint ? account.addUnits(0, AMOUNT_UNITS) : account.add(0, AMOUNT);
+    }
+}
@@ -0,0 +1,67 @@
+package com.vitor.benchmark;
+
+import com.vitor.model.CurrencyFormatter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.math.BigDecimal;
+import java.text.DecimalFormat;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Balance formatting, with DecimalFormat (what the formatter replaced) as the baseline.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class FormatBenchmark {
+
+    private static final int VALUES = 1024;
+
+    @Param({"#,##0.00", "0.##"})
+    public String pattern;
+
+    private CurrencyFormatter formatter;
+    private DecimalFormat decimalFormat;
+    private final BigDecimal[] amounts = new BigDecimal[VALUES];
+    private final long[] units = new long[VALUES];
+    private int next;
+
+    @Setup
+    public void setUp() {
+        formatter = new CurrencyFormatter("$", pattern);
+        decimalFormat = new DecimalFormat(pattern);
+        SplittableRandom random = new SplittableRandom(42);
+        for (int i = 0; i < VALUES; i++) {
+            // Mostly everyday balances, some large ones for the grouping path
+            units[i] = random.nextInt(8) == 0 ? random.nextLong(1L << 50) : random.nextLong(10_000_000);
+            amounts[i] = BigDecimal.valueOf(units[i], 2);
+        }
+    }
+
+    private int nextIndex() {
+        return next = (next + 1) & (VALUES - 1);
+    }
+
+    @Benchmark
+    public String formatBigDecimal() {
+        return formatter.format(amounts[nextIndex()]);
+    }
+
+    @Benchmark
+    public String formatUnits() {
+        return formatter.format(units[nextIndex()], 2);
+    }
+
+    @Benchmark
+    public String decimalFormat() {
+        return "$" + decimalFormat.format(amounts[nextIndex()]);
+    }
+}
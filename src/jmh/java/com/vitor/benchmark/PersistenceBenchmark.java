@@ -0,0 +1,120 @@
+package com.vitor.benchmark;
+
+import com.vitor.metrics.Telemetry;
+import com.vitor.model.CurrencyRegistry;
+import com.vitor.model.UserAccount;
+import com.vitor.storage.DatabaseManager;
+import com.vitor.storage.StorageBackend;
+import com.vitor.storage.TransactionJournal;
+import com.zaxxer.hikari.HikariConfig;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.math.BigDecimal;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+/**
+ * Account loads and saves against an in-memory H2 in MariaDB mode. Absolute numbers don't
+ * match a networked MariaDB, but they show changes in the statements and in the JDBC work.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class PersistenceBenchmark {
+
+    private static final int PLAYERS = 2000;
+    private static final int BATCH = 200;
+    private static final BigDecimal AMOUNT = new BigDecimal("1.00");
+
+    private final CurrencyRegistry registry = new CurrencyRegistry(List.of("money", "gems"), List.of(2, 2), false);
+    private final BigDecimal[] defaultBalances = {new BigDecimal("100.00"), BigDecimal.ZERO};
+    private final UUID[] uuids = new UUID[PLAYERS];
+    private final Map<UUID, UserAccount> accounts = new HashMap<>();
+    private DatabaseManager database;
+    private int next;
+
+    // No journal and no telemetry, so only the database work is measured
+    private final class BenchmarkHost implements StorageBackend.Host {
+        private final Logger logger = Logger.getLogger("vEconomy-benchmark");
+
+        @Override
+        public Logger getLogger() { return logger; }
+        @Override
+        public UserAccount newAccount() { return new UserAccount(registry); }
+        @Override
+        public boolean isLoggingEnabled() { return false; }
+        @Override
+        public TransactionJournal getJournal() { return null; }
+        @Override
+        public Telemetry getTelemetry() { return null; }
+        @Override
+        public void onRemoteChange(UUID uuid, UserAccount account, int currency, BigDecimal delta) {}
+        @Override
+        public void onRowsCreated(String currencyId, BigDecimal startBalances) {}
+    }
+
+    @Setup
+    public void setUp() {
+        HikariConfig config = new HikariConfig();
+        config.setJdbcUrl("jdbc:h2:mem:veconomy;MODE=MariaDB;DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1");
+        config.setMaximumPoolSize(4);
+        config.setPoolName("vEconomy-Benchmark");
+        database = new DatabaseManager(new BenchmarkHost(), config);
+
+        for (int i = 0; i < PLAYERS; i++) {
+            uuids[i] = UUID.randomUUID();
+            UserAccount account = new UserAccount(registry);
+            account.setBalance(0, defaultBalances[0]);
+            account.setBalance(1, new BigDecimal("5.00"));
+            accounts.put(uuids[i], account);
+        }
+        database.saveAccounts(accounts, true);
+    }
+
+    @TearDown
+    public void tearDown() {
+        database.close();
+    }
+
+    private UUID nextPlayer() {
+        return uuids[next = (next + 1) % PLAYERS];
+    }
+
+    @Benchmark
+    public UserAccount loadAccount() {
+        return database.loadAccount(nextPlayer(), defaultBalances);
+    }
+
+    @Benchmark
+    public UserAccount saveAccount() {
+        UUID uuid = nextPlayer();
+        UserAccount account = accounts.get(uuid);
+        account.add(0, AMOUNT);
+        database.saveAccount(uuid, account);
+        return account;
+    }
+
+    @Benchmark
+    public Map<UUID, UserAccount> saveAccounts() {
+        Map<UUID, UserAccount> batch = new HashMap<>();
+        for (int i = 0; i < BATCH; i++) {
+            UUID uuid = nextPlayer();
+            UserAccount account = accounts.get(uuid);
+            account.add(0, AMOUNT);
+            batch.put(uuid, account);
+        }
+        database.saveAccounts(batch, true);
+        return batch;
+    }
+}
@@ -0,0 +1,72 @@
+package com.vitor.benchmark;
+
+import com.vitor.model.CurrencyFormatter;
+import com.vitor.model.CurrencyRegistry;
+import com.vitor.model.Placeholder;
+import com.vitor.model.UserAccount;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The path of a %veconomy_<currency>_balance% request: parsed params lookup, then the
+ * per-account formatted cache. A scoreboard refreshing every tick mostly hits an unchanged balance.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class PlaceholderBenchmark {
+
+    private static final String PARAMS = "event_tokens_balance";
+    private static final BigDecimal AMOUNT = new BigDecimal("0.01");
+
+    private CurrencyRegistry registry;
+    private CurrencyFormatter formatter;
+    private UserAccount account;
+    private final Map<String, Placeholder> parsed = new ConcurrentHashMap<>();
+
+    @Setup
+    public void setUp() {
+        registry = new CurrencyRegistry(List.of("money", "event", "event_tokens"), List.of(2, 2, 2), false);
+        formatter = new CurrencyFormatter("$", "#,##0.00");
+        account = new UserAccount(registry);
+        account.setBalance(2, new BigDecimal("1234567.00"));
+        parsed.put(PARAMS, Placeholder.parse(registry, PARAMS));
+    }
+
+    private String resolve() {
+        Placeholder placeholder = parsed.get(PARAMS);
+        return account.format(placeholder.currency(), formatter);
+    }
+
+    @Benchmark
+    public Placeholder parse() {
+        return Placeholder.parse(registry, PARAMS);
+    }
+
+    @Benchmark
+    public String unchangedBalance() {
+        return resolve();
+    }
+
+    @Benchmark
+    public String changedBalance() {
+        account.add(2, AMOUNT);
+        return resolve();
+    }
+
+    @Benchmark
+    public String uncached() {
+        return account.formatUncached(parsed.get(PARAMS).currency(), formatter);
+    }
+}
@@ -0,0 +1,68 @@
+package com.vitor.api;
+
+import java.math.BigDecimal;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Non-blocking counterpart of {@link vEconomyAPI}.
+ * Registered in the ServicesManager next to it.
+ * <p>
+ * Operations on online (cached) players run on the calling thread and return an already
+ * completed future. Operations that need the database run on vEconomy's own virtual-thread
+ * executor, so they never occupy the caller or the common ForkJoin pool.
+ * Failures (insufficient funds, invalid amounts) complete the future exceptionally with the
+ * same exceptions the blocking API throws.
+ */
+public interface AsyncEconomyAPI {
+
+    /**
+     * @see vEconomyAPI#getBalance(UUID, String)
+     */
+    CompletableFuture<BigDecimal> getBalance(UUID playerUuid, String currencyId);
+
+    /**
+     * @see vEconomyAPI#deposit(UUID, String, BigDecimal)
+     */
+    CompletableFuture<BigDecimal> deposit(UUID playerUuid, String currencyId, BigDecimal amount);
+
+    /**
+     * @see vEconomyAPI#withdraw(UUID, String, BigDecimal)
+     */
+    CompletableFuture<BigDecimal> withdraw(UUID playerUuid, String currencyId, BigDecimal amount);
+
+    /**
+     * @see vEconomyAPI#setBalance(UUID, String, BigDecimal)
+     */
+    CompletableFuture<Void> setBalance(UUID playerUuid, String currencyId, BigDecimal amount);
+
+    /**
+     * @see vEconomyAPI#depositAll(String, Map)
+     */
+    CompletableFuture<PayoutResult> depositAll(String currencyId, Map<UUID, BigDecimal> amounts);
+
+    /**
+     * @see vEconomyAPI#depositAll(String, Collection, BigDecimal)
+     */
+    CompletableFuture<PayoutResult> depositAll(String currencyId, Collection<UUID> players, BigDecimal amount);
+
+    /**
+     * Always completes on the vEconomy executor, since transfers take per-player locks.
+     * @see vEconomyAPI#transfer(UUID, UUID, String, BigDecimal)
+     */
+    CompletableFuture<Void> transfer(UUID from, UUID to, String currencyId, BigDecimal amount);
+
+    /**
+     * @see vEconomyAPI#transfer(List)
+     */
+    CompletableFuture<Void> transfer(List<TransferLeg> legs);
+
+    /**
+     * Always completes on the vEconomy executor, since it queries the database.
+     * @see vEconomyAPI#getHistory(UUID, String, long, int)
+     */
+    CompletableFuture<List<TransactionRecord>> getHistory(UUID playerUuid, String currencyId, long beforeId, int limit);
+}
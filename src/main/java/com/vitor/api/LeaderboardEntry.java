@@ -0,0 +1,14 @@
+package com.vitor.api;
+
+import java.math.BigDecimal;
+import java.util.UUID;
+
+/**
+ * One position of a currency leaderboard.
+ *
+ * @param rank Position, starting at 1.
+ * @param uuid The player.
+ * @param name Last known name of the player, or null if unknown.
+ * @param balance The balance the player is ranked by.
+ */
+public record LeaderboardEntry(int rank, UUID uuid, String name, BigDecimal balance) {}
@@ -0,0 +1,23 @@
+package com.vitor.api;
+
+import java.math.BigDecimal;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Per-player outcome of a bulk deposit.
+ *
+ * @param balances New balance of every player that was paid.
+ * @param failed Players that could not be paid (e.g. database error); nothing was applied for them.
+ */
+public record PayoutResult(Map<UUID, BigDecimal> balances, Set<UUID> failed) {
+
+    public int paidCount() {
+        return balances.size();
+    }
+
+    public boolean isComplete() {
+        return failed.isEmpty();
+    }
+}
@@ -0,0 +1,23 @@
+package com.vitor.api;
+
+import java.math.BigDecimal;
+import java.util.UUID;
+
+/**
+ * One balance change of a player, as kept in the transaction history.
+ * A transfer is recorded twice: TRANSFER_OUT for the payer and TRANSFER_IN for the receiver.
+ *
+ * @param id Increases with every record; pass the last one seen to get the next page.
+ * @param time When it happened, in epoch millis.
+ * @param player The player whose balance changed.
+ * @param counterparty The other player of a transfer, or null.
+ * @param currencyId The ID of the currency.
+ * @param type What happened.
+ * @param amount The amount moved, or the new balance for SET.
+ * @param balance The player's balance afterwards, or null if not known (transfers).
+ */
+public record TransactionRecord(long id, long time, UUID player, UUID counterparty, String currencyId,
+                                Type type, BigDecimal amount, BigDecimal balance) {
+
+    public enum Type { DEPOSIT, WITHDRAW, SET, TRANSFER_OUT, TRANSFER_IN }
+}
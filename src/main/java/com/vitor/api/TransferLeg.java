@@ -0,0 +1,10 @@
+package com.vitor.api;
+
+import java.math.BigDecimal;
+import java.util.UUID;
+
+/**
+ * One movement of money inside a multi-leg transfer.
+ * @see vEconomyAPI#transfer(java.util.List)
+ */
+public record TransferLeg(UUID from, UUID to, String currencyId, BigDecimal amount) {}
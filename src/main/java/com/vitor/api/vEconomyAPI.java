@@ -1,6 +1,9 @@
 package com.vitor.api;
 
 import java.math.BigDecimal;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.UUID;
 
@@ -9,7 +12,8 @@ import java.util.UUID;
  * Thread-safe implementation.
  * <p>
  * Note: Methods interacting with balances may block the thread if the player
- * is offline (due to Database I/O). It is recommended to call these methods asynchronously.
+ * is offline (due to Database I/O). It is recommended to call these methods asynchronously,
+ * or to use {@link AsyncEconomyAPI}, which does this for you.
  */
 public interface vEconomyAPI {
 
@@ -44,7 +48,8 @@ public interface vEconomyAPI {
      * @param currencyId The ID of the currency.
      * @param amount The amount to deposit (must be positive).
      * @return The new balance after the deposit.
-     * @throws IllegalArgumentException if amount is negative or null.
+     * @throws IllegalArgumentException if amount is negative or null, or has more decimals than the currency scale.
+     * @throws ArithmeticException if the new balance exceeds the fixed-point range.
      */
     BigDecimal deposit(UUID playerUuid, String currencyId, BigDecimal amount);
 
@@ -56,7 +61,7 @@ public interface vEconomyAPI {
      * @param currencyId The ID of the currency.
      * @param amount The amount to withdraw (must be positive).
      * @return The new balance after the withdrawal.
-     * @throws IllegalArgumentException if amount is negative.
+     * @throws IllegalArgumentException if amount is negative, or has more decimals than the currency scale.
      * @throws IllegalStateException if the player has insufficient funds.
      */
     BigDecimal withdraw(UUID playerUuid, String currencyId, BigDecimal amount);
@@ -70,6 +75,74 @@ public interface vEconomyAPI {
      */
     void setBalance(UUID playerUuid, String currencyId, BigDecimal amount);
 
+    /**
+     * Pays many players at once (event prizes, salaries).
+     * Online players are credited in memory in parallel; offline players are settled with
+     * a few set-based database statements instead of one round-trip each.
+     *
+     * @param currencyId The ID of the currency.
+     * @param amounts The amount to deposit for each player (must be positive).
+     * @return The new balance of every paid player, and the players that could not be paid.
+     * @throws IllegalArgumentException if any amount is negative or the currency doesn't exist.
+     */
+    PayoutResult depositAll(String currencyId, Map<UUID, BigDecimal> amounts);
+
+    /**
+     * Pays the same amount to many players at once.
+     * @see #depositAll(String, Map)
+     */
+    PayoutResult depositAll(String currencyId, Collection<UUID> players, BigDecimal amount);
+
+    /**
+     * Moves an amount from one player to another as a single atomic operation.
+     * Either both balances change or neither does, for any mix of online and offline players.
+     *
+     * @param from The UUID of the paying player.
+     * @param to The UUID of the receiving player.
+     * @param currencyId The ID of the currency.
+     * @param amount The amount to move (must be positive).
+     * @throws IllegalArgumentException if amount is negative or the currency doesn't exist.
+     * @throws IllegalStateException if the payer has insufficient funds (nothing is moved).
+     */
+    void transfer(UUID from, UUID to, String currencyId, BigDecimal amount);
+
+    /**
+     * Applies several transfers, possibly in different currencies, as one atomic operation.
+     * Useful for trades: either every leg is applied or none is.
+     *
+     * @param legs The movements to apply.
+     * @throws IllegalArgumentException if any amount is negative or any currency doesn't exist.
+     * @throws IllegalStateException if any payer has insufficient funds (nothing is moved).
+     */
+    void transfer(List<TransferLeg> legs);
+
+    /**
+     * Returns a page of the richest players of a currency.
+     * Served from an in-memory index kept current on every change, so it never queries the database.
+     *
+     * @param currencyId The ID of the currency.
+     * @param offset Positions to skip (0 for the first page).
+     * @param count Maximum number of entries; only the configured leaderboard size is tracked.
+     * @return Entries ordered by rank, empty past the end.
+     * @throws IllegalArgumentException if the currency doesn't exist.
+     */
+    List<LeaderboardEntry> getTopBalances(String currencyId, int offset, int count);
+
+    /**
+     * Returns a page of a player's transaction history, newest first.
+     * Performs a database query; changes of the last moments may not be visible yet,
+     * since history rows are written in the background.
+     *
+     * @param playerUuid The UUID of the player.
+     * @param currencyId Only this currency, or null for all currencies.
+     * @param beforeId Only records older than this id: Long.MAX_VALUE for the first page,
+     *                 then the id of the last record of the previous page.
+     * @param limit Maximum number of records (at most 500).
+     * @return The records, empty past the end or if the history is disabled.
+     * @throws IllegalArgumentException if the currency doesn't exist.
+     */
+    List<TransactionRecord> getHistory(UUID playerUuid, String currencyId, long beforeId, int limit);
+
     /**
      * Gets the average input (earnings) per second.
      * Based on a sliding window algorithm.
@@ -0,0 +1,100 @@
+package com.vitor.metrics;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free latency histogram with power-of-two nanosecond buckets.
+ * Bucket i counts durations in [2^(i-1), 2^i) ns, so recording is a leading-zero count plus
+ * one striped increment; percentiles are reported as the upper bound of their bucket.
+ */
+public final class LatencyHistogram {
+
+    private static final int BUCKETS = 64;
+
+    private final String name;
+    private final LongAdder[] buckets = new LongAdder[BUCKETS];
+    private final LongAdder count = new LongAdder();
+    private final LongAdder totalNanos = new LongAdder();
+
+    public LatencyHistogram(String name) {
+        this.name = name;
+        for (int i = 0; i < BUCKETS; i++) buckets[i] = new LongAdder();
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public void record(long nanos) {
+        if (nanos < 0) nanos = 0;
+        buckets[BUCKETS - Long.numberOfLeadingZeros(nanos)].increment();
+        count.increment();
+        totalNanos.add(nanos);
+    }
+
+    /**
+     * Records the time elapsed since a {@link System#nanoTime()} reading.
+     */
+    public void recordSince(long startNanos) {
+        record(System.nanoTime() - startNanos);
+    }
+
+    public long getCount() {
+        return count.sum();
+    }
+
+    public double getMeanMicros() {
+        long n = count.sum();
+        return n == 0 ? 0.0 : totalNanos.sum() / (double) n / 1000.0;
+    }
+
+    /**
+     * @param quantile Between 0 and 1, e.g. 0.99.
+     * @return Upper bound of the bucket holding the quantile, in microseconds (0 if empty).
+     */
+    public double getPercentileMicros(double quantile) {
+        long[] snapshot = new long[BUCKETS];
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            snapshot[i] = buckets[i].sum();
+            total += snapshot[i];
+        }
+        if (total == 0) return 0.0;
+
+        long target = Math.max(1, (long) Math.ceil(quantile * total));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += snapshot[i];
+            if (seen >= target) return upperBoundNanos(i) / 1000.0;
+        }
+        return upperBoundNanos(BUCKETS - 1) / 1000.0;
+    }
+
+    /**
+     * Cumulative counts per bucket upper bound (in seconds), for Prometheus style export.
+     * Empty trailing buckets are left out.
+     */
+    public void forEachBucket(BucketConsumer consumer) throws IOException {
+        long cumulative = 0;
+        long total = count.sum();
+        for (int i = 0; i < BUCKETS && cumulative < total; i++) {
+            long inBucket = buckets[i].sum();
+            cumulative += inBucket;
+            if (inBucket > 0 || cumulative > 0) consumer.accept(upperBoundNanos(i) / 1e9, cumulative);
+        }
+    }
+
+    public double getTotalSeconds() {
+        return totalNanos.sum() / 1e9;
+    }
+
+    @FunctionalInterface
+    public interface BucketConsumer {
+        void accept(double upperBoundSeconds, long cumulativeCount) throws IOException;
+    }
+
+    private static double upperBoundNanos(int bucket) {
+        return bucket == 0 ? 1.0 : Math.scalb(1.0, bucket);
+    }
+}
@@ -0,0 +1,304 @@
+package com.vitor.metrics;
+
+import com.vitor.model.CurrencyRegistry;
+import com.vitor.model.UserAccount;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.math.BigDecimal;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Server-wide economy aggregates: money supply, faucet/sink flow and transaction counts per currency,
+ * plus latency histograms per API method and DB query. Every counter is striped (LongAdder/DoubleAdder),
+ * so recording never contends; reads sum the stripes.
+ * <p>
+ * Supply is seeded from the database on startup and then follows every faucet and sink, plus the
+ * start balances of newly stored rows and the changes merged from other servers.
+ */
+public class Telemetry implements TelemetryMXBean {
+
+    private static final String OBJECT_NAME = "com.vitor.vEconomy:type=Telemetry";
+
+    /**
+     * Connection pool saturation at one point in time.
+     */
+    public record PoolStats(int active, int idle, int total, int waiting) {
+        public static final PoolStats EMPTY = new PoolStats(0, 0, 0, 0);
+    }
+
+    private static final class CurrencyCounters {
+        private final DoubleAdder faucet = new DoubleAdder();
+        private final DoubleAdder sink = new DoubleAdder();
+        private final LongAdder transactions = new LongAdder();
+        // Supply changes that are neither faucet nor sink
+        private final DoubleAdder adjustment = new DoubleAdder();
+        private final UserAccount.MetricTracker rates;
+        private volatile BigDecimal seededSupply = BigDecimal.ZERO;
+
+        CurrencyCounters(int window) {
+            this.rates = new UserAccount.MetricTracker(window);
+        }
+    }
+
+    private final CurrencyRegistry registry;
+    private final CurrencyCounters[] currencies;
+    private final Map<String, LatencyHistogram> histograms = new ConcurrentSkipListMap<>();
+    private volatile Supplier<PoolStats> pool = () -> PoolStats.EMPTY;
+
+    /**
+     * @param window Seconds averaged by the faucet/sink rates.
+     */
+    public Telemetry(CurrencyRegistry registry, int window) {
+        this.registry = registry;
+        this.currencies = new CurrencyCounters[registry.size()];
+        for (int i = 0; i < currencies.length; i++) currencies[i] = new CurrencyCounters(window);
+    }
+
+    public LatencyHistogram histogram(String name) {
+        return histograms.computeIfAbsent(name, LatencyHistogram::new);
+    }
+
+    public void setPoolStats(Supplier<PoolStats> pool) {
+        this.pool = pool;
+    }
+
+    public PoolStats getPoolStats() {
+        return pool.get();
+    }
+
+    // --- Recording ---
+
+    public void seedSupply(int currency, BigDecimal supply) {
+        currencies[currency].seededSupply = supply;
+        // Rows created before, e.g. by the journal recovery, are part of the sum
+        currencies[currency].adjustment.reset();
+    }
+
+    /**
+     * Money that joined (or left) the supply outside the API, e.g. a start balance stored for the
+     * first time or a change another server made. Not counted as faucet or sink.
+     */
+    public void adjustSupply(int currency, BigDecimal delta) {
+        currencies[currency].adjustment.add(delta.doubleValue());
+    }
+
+    public void onTransaction(int currency) {
+        currencies[currency].transactions.increment();
+    }
+
+    /**
+     * Money created (deposits, payouts, balances set higher).
+     */
+    public void onFaucet(int currency, BigDecimal amount) {
+        double value = amount.doubleValue();
+        CurrencyCounters counters = currencies[currency];
+        counters.faucet.add(value);
+        counters.rates.addInput(value);
+    }
+
+    /**
+     * Money destroyed (withdrawals, balances set lower).
+     */
+    public void onSink(int currency, BigDecimal amount) {
+        double value = amount.doubleValue();
+        CurrencyCounters counters = currencies[currency];
+        counters.sink.add(value);
+        counters.rates.addOutput(value);
+    }
+
+    /**
+     * Records a balance moved by an arbitrary delta, as faucet or sink depending on its sign.
+     */
+    public void onChange(int currency, BigDecimal delta) {
+        if (delta.signum() > 0) {
+            onFaucet(currency, delta);
+        } else if (delta.signum() < 0) {
+            onSink(currency, delta.negate());
+        }
+    }
+
+    // --- Reading ---
+
+    public double getSupply(int currency) {
+        CurrencyCounters counters = currencies[currency];
+        return counters.seededSupply.doubleValue() + counters.adjustment.sum() + counters.faucet.sum() - counters.sink.sum();
+    }
+
+    public double getFaucetPerSecond(int currency) {
+        return currencies[currency].rates.getInputRate();
+    }
+
+    public double getSinkPerSecond(int currency) {
+        return currencies[currency].rates.getOutputRate();
+    }
+
+    public long getTransactionCount(int currency) {
+        return currencies[currency].transactions.sum();
+    }
+
+    /**
+     * Histograms that recorded at least one call, by name.
+     */
+    public Map<String, LatencyHistogram> getHistograms() {
+        Map<String, LatencyHistogram> used = new LinkedHashMap<>();
+        histograms.forEach((name, histogram) -> {
+            if (histogram.getCount() > 0) used.put(name, histogram);
+        });
+        return used;
+    }
+
+    @Override
+    public Map<String, Double> getSupply() {
+        return perCurrency(this::getSupply);
+    }
+
+    @Override
+    public Map<String, Double> getFaucetPerSecond() {
+        return perCurrency(this::getFaucetPerSecond);
+    }
+
+    @Override
+    public Map<String, Double> getSinkPerSecond() {
+        return perCurrency(this::getSinkPerSecond);
+    }
+
+    @Override
+    public Map<String, Long> getTransactionCounts() {
+        Map<String, Long> result = new LinkedHashMap<>();
+        for (int i = 0; i < currencies.length; i++) result.put(registry.idOf(i), getTransactionCount(i));
+        return result;
+    }
+
+    @Override
+    public Map<String, Long> getLatencyCounts() {
+        return perHistogram(LatencyHistogram::getCount);
+    }
+
+    @Override
+    public Map<String, Double> getLatencyP50Micros() {
+        return perHistogram(histogram -> histogram.getPercentileMicros(0.5));
+    }
+
+    @Override
+    public Map<String, Double> getLatencyP99Micros() {
+        return perHistogram(histogram -> histogram.getPercentileMicros(0.99));
+    }
+
+    @Override
+    public int getPoolActiveConnections() {
+        return pool.get().active();
+    }
+
+    @Override
+    public int getPoolIdleConnections() {
+        return pool.get().idle();
+    }
+
+    @Override
+    public int getPoolTotalConnections() {
+        return pool.get().total();
+    }
+
+    @Override
+    public int getPoolThreadsAwaitingConnection() {
+        return pool.get().waiting();
+    }
+
+    private Map<String, Double> perCurrency(IntToDouble getter) {
+        Map<String, Double> result = new LinkedHashMap<>();
+        for (int i = 0; i < currencies.length; i++) result.put(registry.idOf(i), getter.apply(i));
+        return result;
+    }
+
+    @FunctionalInterface
+    private interface IntToDouble {
+        double apply(int currency);
+    }
+
+    private <T> Map<String, T> perHistogram(Function<LatencyHistogram, T> getter) {
+        Map<String, T> result = new LinkedHashMap<>();
+        getHistograms().forEach((name, histogram) -> result.put(name, getter.apply(histogram)));
+        return result;
+    }
+
+    // --- Export ---
+
+    public void registerMBean() throws JMException {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = new ObjectName(OBJECT_NAME);
+        if (server.isRegistered(name)) server.unregisterMBean(name); // Left over from a reload
+        server.registerMBean(this, name);
+    }
+
+    public void unregisterMBean() {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(OBJECT_NAME);
+            if (server.isRegistered(name)) server.unregisterMBean(name);
+        } catch (JMException ignored) {
+            // Nothing to clean up
+        }
+    }
+
+    /**
+     * Writes every metric in the Prometheus text exposition format.
+     */
+    public void writePrometheus(Writer out) throws IOException {
+        gauge(out, "veconomy_supply", "Money in circulation.", this::getSupply);
+        counter(out, "veconomy_faucet_total", "Money created since startup.", i -> currencies[i].faucet.sum());
+        counter(out, "veconomy_sink_total", "Money destroyed since startup.", i -> currencies[i].sink.sum());
+        gauge(out, "veconomy_faucet_per_second", "Money created per second, averaged over the metrics window.", this::getFaucetPerSecond);
+        gauge(out, "veconomy_sink_per_second", "Money destroyed per second, averaged over the metrics window.", this::getSinkPerSecond);
+        counter(out, "veconomy_transactions_total", "Balance operations since startup.", i -> (double) getTransactionCount(i));
+
+        out.write("# HELP veconomy_latency_seconds Latency of API methods (api.*) and database queries (db.*).\n");
+        out.write("# TYPE veconomy_latency_seconds histogram\n");
+        for (Map.Entry<String, LatencyHistogram> entry : getHistograms().entrySet()) {
+            String op = entry.getKey();
+            LatencyHistogram histogram = entry.getValue();
+            long count = histogram.getCount();
+            histogram.forEachBucket((le, cumulative) ->
+                    out.write("veconomy_latency_seconds_bucket{op=\"" + op + "\",le=\"" + le + "\"} " + cumulative + "\n"));
+            out.write("veconomy_latency_seconds_bucket{op=\"" + op + "\",le=\"+Inf\"} " + count + "\n");
+            out.write("veconomy_latency_seconds_sum{op=\"" + op + "\"} " + histogram.getTotalSeconds() + "\n");
+            out.write("veconomy_latency_seconds_count{op=\"" + op + "\"} " + count + "\n");
+        }
+
+        PoolStats stats = pool.get();
+        out.write("# HELP veconomy_db_pool_connections Database pool connections by state.\n");
+        out.write("# TYPE veconomy_db_pool_connections gauge\n");
+        out.write("veconomy_db_pool_connections{state=\"active\"} " + stats.active() + "\n");
+        out.write("veconomy_db_pool_connections{state=\"idle\"} " + stats.idle() + "\n");
+        out.write("veconomy_db_pool_connections{state=\"total\"} " + stats.total() + "\n");
+        out.write("# HELP veconomy_db_pool_waiting Threads waiting for a database connection.\n");
+        out.write("# TYPE veconomy_db_pool_waiting gauge\n");
+        out.write("veconomy_db_pool_waiting " + stats.waiting() + "\n");
+    }
+
+    private void gauge(Writer out, String name, String help, IntToDouble getter) throws IOException {
+        metric(out, name, help, "gauge", getter);
+    }
+
+    private void counter(Writer out, String name, String help, IntToDouble getter) throws IOException {
+        metric(out, name, help, "counter", getter);
+    }
+
+    private void metric(Writer out, String name, String help, String type, IntToDouble getter) throws IOException {
+        out.write("# HELP " + name + " " + help + "\n");
+        out.write("# TYPE " + name + " " + type + "\n");
+        for (int i = 0; i < currencies.length; i++) {
+            out.write(name + "{currency=\"" + registry.idOf(i) + "\"} " + getter.apply(i) + "\n");
+        }
+    }
+}
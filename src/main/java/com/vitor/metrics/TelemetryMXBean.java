@@ -0,0 +1,32 @@
+package com.vitor.metrics;
+
+import java.util.Map;
+
+/**
+ * JMX view of {@link Telemetry}, registered as {@code com.vitor.vEconomy:type=Telemetry}.
+ * Maps are keyed by currency ID or by operation name (api.* and db.*).
+ */
+public interface TelemetryMXBean {
+
+    Map<String, Double> getSupply();
+
+    Map<String, Double> getFaucetPerSecond();
+
+    Map<String, Double> getSinkPerSecond();
+
+    Map<String, Long> getTransactionCounts();
+
+    Map<String, Long> getLatencyCounts();
+
+    Map<String, Double> getLatencyP50Micros();
+
+    Map<String, Double> getLatencyP99Micros();
+
+    int getPoolActiveConnections();
+
+    int getPoolIdleConnections();
+
+    int getPoolTotalConnections();
+
+    int getPoolThreadsAwaitingConnection();
+}
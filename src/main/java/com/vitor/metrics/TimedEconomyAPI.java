@@ -0,0 +1,193 @@
+package com.vitor.metrics;
+
+import com.vitor.api.LeaderboardEntry;
+import com.vitor.api.PayoutResult;
+import com.vitor.api.TransactionRecord;
+import com.vitor.api.TransferLeg;
+import com.vitor.api.vEconomyAPI;
+
+import java.math.BigDecimal;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Decorator that records the latency of every {@link vEconomyAPI} call into an {@code api.*} histogram.
+ * This is the instance handed to other plugins; failed calls are timed too.
+ */
+public class TimedEconomyAPI implements vEconomyAPI {
+
+    private final vEconomyAPI delegate;
+
+    private final LatencyHistogram currencyExists, registeredCurrencies, getBalance, deposit, withdraw,
+            setBalance, depositAll, transfer, topBalances, history, inputPerSecond, outputPerSecond, format;
+
+    public TimedEconomyAPI(vEconomyAPI delegate, Telemetry telemetry) {
+        this.delegate = delegate;
+        this.currencyExists = telemetry.histogram("api.currencyExists");
+        this.registeredCurrencies = telemetry.histogram("api.getRegisteredCurrencies");
+        this.getBalance = telemetry.histogram("api.getBalance");
+        this.deposit = telemetry.histogram("api.deposit");
+        this.withdraw = telemetry.histogram("api.withdraw");
+        this.setBalance = telemetry.histogram("api.setBalance");
+        this.depositAll = telemetry.histogram("api.depositAll");
+        this.transfer = telemetry.histogram("api.transfer");
+        this.topBalances = telemetry.histogram("api.getTopBalances");
+        this.history = telemetry.histogram("api.getHistory");
+        this.inputPerSecond = telemetry.histogram("api.getInputPerSecond");
+        this.outputPerSecond = telemetry.histogram("api.getOutputPerSecond");
+        this.format = telemetry.histogram("api.format");
+    }
+
+    @Override
+    public boolean currencyExists(String currencyId) {
+        long start = System.nanoTime();
+        try {
+            return delegate.currencyExists(currencyId);
+        } finally {
+            currencyExists.recordSince(start);
+        }
+    }
+
+    @Override
+    public Set<String> getRegisteredCurrencies() {
+        long start = System.nanoTime();
+        try {
+            return delegate.getRegisteredCurrencies();
+        } finally {
+            registeredCurrencies.recordSince(start);
+        }
+    }
+
+    @Override
+    public BigDecimal getBalance(UUID playerUuid, String currencyId) {
+        long start = System.nanoTime();
+        try {
+            return delegate.getBalance(playerUuid, currencyId);
+        } finally {
+            getBalance.recordSince(start);
+        }
+    }
+
+    @Override
+    public BigDecimal deposit(UUID playerUuid, String currencyId, BigDecimal amount) {
+        long start = System.nanoTime();
+        try {
+            return delegate.deposit(playerUuid, currencyId, amount);
+        } finally {
+            deposit.recordSince(start);
+        }
+    }
+
+    @Override
+    public BigDecimal withdraw(UUID playerUuid, String currencyId, BigDecimal amount) {
+        long start = System.nanoTime();
+        try {
+            return delegate.withdraw(playerUuid, currencyId, amount);
+        } finally {
+            withdraw.recordSince(start);
+        }
+    }
+
+    @Override
+    public void setBalance(UUID playerUuid, String currencyId, BigDecimal amount) {
+        long start = System.nanoTime();
+        try {
+            delegate.setBalance(playerUuid, currencyId, amount);
+        } finally {
+            setBalance.recordSince(start);
+        }
+    }
+
+    @Override
+    public PayoutResult depositAll(String currencyId, Map<UUID, BigDecimal> amounts) {
+        long start = System.nanoTime();
+        try {
+            return delegate.depositAll(currencyId, amounts);
+        } finally {
+            depositAll.recordSince(start);
+        }
+    }
+
+    @Override
+    public PayoutResult depositAll(String currencyId, Collection<UUID> players, BigDecimal amount) {
+        long start = System.nanoTime();
+        try {
+            return delegate.depositAll(currencyId, players, amount);
+        } finally {
+            depositAll.recordSince(start);
+        }
+    }
+
+    @Override
+    public void transfer(UUID from, UUID to, String currencyId, BigDecimal amount) {
+        long start = System.nanoTime();
+        try {
+            delegate.transfer(from, to, currencyId, amount);
+        } finally {
+            transfer.recordSince(start);
+        }
+    }
+
+    @Override
+    public void transfer(List<TransferLeg> legs) {
+        long start = System.nanoTime();
+        try {
+            delegate.transfer(legs);
+        } finally {
+            transfer.recordSince(start);
+        }
+    }
+
+    @Override
+    public List<LeaderboardEntry> getTopBalances(String currencyId, int offset, int count) {
+        long start = System.nanoTime();
+        try {
+            return delegate.getTopBalances(currencyId, offset, count);
+        } finally {
+            topBalances.recordSince(start);
+        }
+    }
+
+    @Override
+    public List<TransactionRecord> getHistory(UUID playerUuid, String currencyId, long beforeId, int limit) {
+        long start = System.nanoTime();
+        try {
+            return delegate.getHistory(playerUuid, currencyId, beforeId, limit);
+        } finally {
+            history.recordSince(start);
+        }
+    }
+
+    @Override
+    public double getInputPerSecond(UUID playerUuid, String currencyId) {
+        long start = System.nanoTime();
+        try {
+            return delegate.getInputPerSecond(playerUuid, currencyId);
+        } finally {
+            inputPerSecond.recordSince(start);
+        }
+    }
+
+    @Override
+    public double getOutputPerSecond(UUID playerUuid, String currencyId) {
+        long start = System.nanoTime();
+        try {
+            return delegate.getOutputPerSecond(playerUuid, currencyId);
+        } finally {
+            outputPerSecond.recordSince(start);
+        }
+    }
+
+    @Override
+    public String format(String currencyId, BigDecimal amount) {
+        long start = System.nanoTime();
+        try {
+            return delegate.format(currencyId, amount);
+        } finally {
+            format.recordSince(start);
+        }
+    }
+}
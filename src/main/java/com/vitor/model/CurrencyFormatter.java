@@ -0,0 +1,168 @@
+package com.vitor.model;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.text.DecimalFormat;
+import java.text.DecimalFormatSymbols;
+
+/**
+ * Thread-safe, precompiled formatter for one currency.
+ * <p>
+ * The pattern is parsed once by {@link DecimalFormat}; plain number patterns (grouping, integer
+ * and fraction digits, prefix/suffix) are then rendered directly into a right-sized char array,
+ * producing the same text as {@code DecimalFormat} without its per-call objects.
+ * Other patterns (exponent, percent, currency sign...) fall back to a shared, locked DecimalFormat.
+ */
+public final class CurrencyFormatter {
+
+    private static final long[] POW10 = {
+            1L, 10L, 100L, 1_000L, 10_000L, 100_000L, 1_000_000L, 10_000_000L, 100_000_000L,
+            1_000_000_000L, 10_000_000_000L, 100_000_000_000L, 1_000_000_000_000L,
+            10_000_000_000_000L, 100_000_000_000_000L, 1_000_000_000_000_000L, 10_000_000_000_000_000L,
+            100_000_000_000_000_000L, 1_000_000_000_000_000_000L
+    };
+
+    private final String symbol;
+    private final DecimalFormat fallback;
+    private final boolean fast;
+
+    private final String positivePrefix, positiveSuffix, negativePrefix, negativeSuffix;
+    private final int groupingSize;
+    private final int minInteger, minFraction, maxFraction;
+    private final boolean alwaysShowSeparator;
+    private final char zero, groupingSeparator, decimalSeparator;
+    private final RoundingMode rounding;
+
+    /**
+     * @param symbol Text put before every formatted amount.
+     * @param pattern A {@link DecimalFormat} pattern.
+     * @throws IllegalArgumentException if the pattern is invalid.
+     */
+    public CurrencyFormatter(String symbol, String pattern) {
+        this.symbol = String.valueOf(symbol);
+        this.fallback = new DecimalFormat(pattern);
+
+        DecimalFormat df = fallback;
+        DecimalFormatSymbols symbols = df.getDecimalFormatSymbols();
+        this.positivePrefix = df.getPositivePrefix();
+        this.positiveSuffix = df.getPositiveSuffix();
+        this.negativePrefix = df.getNegativePrefix();
+        this.negativeSuffix = df.getNegativeSuffix();
+        this.groupingSize = df.isGroupingUsed() ? df.getGroupingSize() : 0;
+        this.minInteger = df.getMinimumIntegerDigits();
+        this.minFraction = df.getMinimumFractionDigits();
+        this.maxFraction = df.getMaximumFractionDigits();
+        this.alwaysShowSeparator = df.isDecimalSeparatorAlwaysShown();
+        this.zero = symbols.getZeroDigit();
+        this.groupingSeparator = symbols.getGroupingSeparator();
+        this.decimalSeparator = symbols.getDecimalSeparator();
+        this.rounding = df.getRoundingMode();
+
+        String compiled = df.toPattern();
+        this.fast = df.getMultiplier() == 1
+                && compiled.indexOf('E') < 0
+                && compiled.indexOf('¤') < 0
+                && maxFraction < POW10.length - 1
+                && minInteger <= 40;
+    }
+
+    public String format(BigDecimal amount) {
+        if (fast && amount.scale() >= 0 && amount.scale() < POW10.length && amount.precision() < 19) {
+            return format(amount.unscaledValue().longValue(), amount.scale());
+        }
+        return formatSlow(amount);
+    }
+
+    /**
+     * Formats a fixed-point amount without converting it to BigDecimal.
+     * @param unscaled The amount in units of 10^-scale.
+     */
+    public String format(long unscaled, int scale) {
+        if (!fast || unscaled == Long.MIN_VALUE || scale < 0 || scale >= POW10.length) {
+            return formatSlow(BigDecimal.valueOf(unscaled, scale));
+        }
+
+        boolean negative = unscaled < 0;
+        long value = Math.abs(unscaled);
+        int digits = scale;
+
+        // Round away the decimals the pattern doesn't show
+        if (scale > maxFraction) {
+            long divisor = POW10[scale - maxFraction];
+            long quotient = value / divisor;
+            long remainder = value % divisor;
+            if (remainder != 0 && roundUp(quotient, remainder, divisor, negative)) quotient++;
+            value = quotient;
+            digits = maxFraction;
+        }
+        // Drop trailing zeros down to the minimum shown
+        while (digits > minFraction && value % 10 == 0) {
+            value /= 10;
+            digits--;
+        }
+        int fractionShown = Math.max(digits, minFraction);
+        long integer = value / POW10[digits];
+        long fraction = value % POW10[digits];
+
+        int integerDigits = 0;
+        while (integerDigits < POW10.length && integer >= POW10[integerDigits]) integerDigits++;
+        int integerShown = Math.max(integerDigits, minInteger);
+        boolean separator = fractionShown > 0 || alwaysShowSeparator;
+        // An empty number is still printed as a zero
+        if (integerShown == 0 && fractionShown == 0) integerShown = 1;
+        int groups = groupingSize > 0 && integerShown > 0 ? (integerShown - 1) / groupingSize : 0;
+
+        String prefix = negative ? negativePrefix : positivePrefix;
+        String suffix = negative ? negativeSuffix : positiveSuffix;
+        int length = symbol.length() + prefix.length() + integerShown + groups + (separator ? 1 : 0) + fractionShown + suffix.length();
+
+        char[] out = new char[length];
+        int pos = 0;
+        symbol.getChars(0, symbol.length(), out, pos);
+        pos += symbol.length();
+        prefix.getChars(0, prefix.length(), out, pos);
+        pos += prefix.length();
+
+        // Integer digits right to left, inserting group separators
+        int end = pos + integerShown + groups;
+        int at = end;
+        for (int i = 0; i < integerShown; i++) {
+            if (groupingSize > 0 && i > 0 && i % groupingSize == 0) out[--at] = groupingSeparator;
+            out[--at] = (char) (zero + (int) (integer % 10));
+            integer /= 10;
+        }
+        pos = end;
+
+        if (separator) out[pos++] = decimalSeparator;
+        // Fraction digits, padded with zeros up to the minimum
+        for (int i = digits - 1; i >= 0; i--) {
+            out[pos + i] = (char) (zero + (int) (fraction % 10));
+            fraction /= 10;
+        }
+        for (int i = digits; i < fractionShown; i++) out[pos + i] = zero;
+        pos += fractionShown;
+
+        suffix.getChars(0, suffix.length(), out, pos);
+        return new String(out);
+    }
+
+    private boolean roundUp(long quotient, long remainder, long divisor, boolean negative) {
+        long twice = remainder * 2; // remainder < divisor <= 10^18, can't overflow
+        return switch (rounding) {
+            case UP -> true;
+            case DOWN -> false;
+            case CEILING -> !negative;
+            case FLOOR -> negative;
+            case HALF_UP -> twice >= divisor;
+            case HALF_DOWN -> twice > divisor;
+            case HALF_EVEN -> twice > divisor || (twice == divisor && (quotient & 1) == 1);
+            case UNNECESSARY -> throw new ArithmeticException("Rounding necessary");
+        };
+    }
+
+    private String formatSlow(BigDecimal amount) {
+        synchronized (fallback) {
+            return symbol + fallback.format(amount);
+        }
+    }
+}
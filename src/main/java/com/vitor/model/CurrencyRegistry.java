@@ -0,0 +1,71 @@
+package com.vitor.model;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Immutable table of the configured currencies.
+ * Each currency gets a dense index, so accounts can keep their state in flat arrays
+ * and only the API boundary has to resolve the String ID.
+ */
+public final class CurrencyRegistry {
+
+    /**
+     * Returned by {@link #indexOf(String)} for currencies that are not registered.
+     */
+    public static final int UNKNOWN = -1;
+
+    private final String[] ids;
+    private final int[] scales;
+    private final Map<String, Integer> indexes;
+    private final Set<String> idSet;
+    private final boolean fixedPoint;
+
+    public CurrencyRegistry(List<String> ids, List<Integer> scales, boolean fixedPoint) {
+        if (ids.size() != scales.size()) throw new IllegalArgumentException("Each currency needs a scale");
+        this.ids = ids.toArray(new String[0]);
+        this.scales = new int[this.ids.length];
+        this.indexes = new HashMap<>();
+        for (int i = 0; i < this.ids.length; i++) {
+            this.scales[i] = FixedPoint.checkScale(scales.get(i));
+            this.indexes.put(this.ids[i], i);
+        }
+        this.idSet = Collections.unmodifiableSet(new LinkedHashSet<>(ids));
+        this.fixedPoint = fixedPoint;
+    }
+
+    public int indexOf(String currencyId) {
+        Integer index = indexes.get(currencyId);
+        return index == null ? UNKNOWN : index;
+    }
+
+    public String idOf(int index) {
+        return ids[index];
+    }
+
+    public int scaleOf(int index) {
+        return scales[index];
+    }
+
+    public int size() {
+        return ids.length;
+    }
+
+    /**
+     * Whether accounts store balances as scaled longs instead of BigDecimal.
+     */
+    public boolean isFixedPoint() {
+        return fixedPoint;
+    }
+
+    /**
+     * @return Unmodifiable set of currency IDs, in index order.
+     */
+    public Set<String> ids() {
+        return idSet;
+    }
+}
@@ -0,0 +1,54 @@
+package com.vitor.model;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+/**
+ * Conversion helpers for fixed-point balances.
+ * A balance is stored as a long count of "units", where one unit is 10^-scale of the currency.
+ */
+public final class FixedPoint {
+
+    // The balances column is DECIMAL(30, 4), so more decimals could not be persisted
+    public static final int MAX_SCALE = 4;
+
+    private static final long[] POW10 = {1L, 10L, 100L, 1_000L, 10_000L};
+
+    private FixedPoint() {}
+
+    /**
+     * Converts an amount to units, rejecting values with more decimals than the scale allows.
+     * @throws IllegalArgumentException if the amount can't be represented exactly.
+     */
+    public static long toUnits(BigDecimal value, int scale) {
+        try {
+            // longValueExact fails both on leftover decimals and on overflow
+            return value.movePointRight(scale).longValueExact();
+        } catch (ArithmeticException e) {
+            throw new IllegalArgumentException("Amount " + value.toPlainString() + " does not fit a " + scale + "-decimal fixed-point balance");
+        }
+    }
+
+    /**
+     * Converts an amount to units, rounding extra decimals with the given mode.
+     * Used when reading stored values, which may have been written with a larger scale.
+     */
+    public static long toUnits(BigDecimal value, int scale, RoundingMode rounding) {
+        return value.setScale(scale, rounding).movePointRight(scale).longValueExact();
+    }
+
+    public static BigDecimal toDecimal(long units, int scale) {
+        return BigDecimal.valueOf(units, scale);
+    }
+
+    public static double toDouble(long units, int scale) {
+        return (double) units / POW10[scale];
+    }
+
+    public static int checkScale(int scale) {
+        if (scale < 0 || scale > MAX_SCALE) {
+            throw new IllegalArgumentException("Scale must be between 0 and " + MAX_SCALE + ": " + scale);
+        }
+        return scale;
+    }
+}
@@ -0,0 +1,274 @@
+package com.vitor.model;
+
+import com.vitor.api.LeaderboardEntry;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+
+/**
+ * Top balances of one currency, kept up to date from balance changes instead of scanning the DB.
+ * <p>
+ * Holds the richest players seeded from the database, up to twice the visible size, and always
+ * exactly the top of all players: anyone not tracked is known to have at most {@code bound}.
+ * A tracked player falling to the bound or below is dropped, since their rank among untracked players
+ * is unknown; once fewer than the visible size remain, {@link #needsSeed()} asks for a reseed.
+ * Reads never block and never touch the database.
+ */
+public class Leaderboard {
+
+    private record Node(UUID uuid, BigDecimal balance) {}
+
+    private static final Comparator<Node> ORDER = Comparator.comparing(Node::balance, Comparator.reverseOrder())
+            .thenComparing(Node::uuid);
+
+    private final int size;
+    private final int capacity;
+    private final Function<UUID, String> names;
+
+    private final ConcurrentSkipListSet<Node> ranking = new ConcurrentSkipListSet<>(ORDER);
+    private final Map<UUID, Node> nodes = new ConcurrentHashMap<>();
+    private final ReentrantLock lock = new ReentrantLock();
+
+    // Highest balance an untracked player can have; null when every player is tracked
+    private volatile BigDecimal bound;
+
+    private final AtomicBoolean seeding = new AtomicBoolean();
+    private Map<UUID, BigDecimal> changedWhileSeeding;
+
+    /**
+     * @param size Visible positions.
+     * @param names Resolves display names when the board is read; must not block, since placeholders read it.
+     */
+    public Leaderboard(int size, Function<UUID, String> names) {
+        this.size = Math.max(1, size);
+        this.capacity = this.size * 2;
+        this.names = names;
+    }
+
+    /**
+     * Number of rows to request when seeding.
+     */
+    public int getSeedLimit() {
+        return capacity;
+    }
+
+    /**
+     * Applies a new balance of a player, e.g. one changed in the DB. Lock-free for players that can't enter the board.
+     */
+    public void update(UUID uuid, BigDecimal balance) {
+        if (cannotEnter(uuid, balance)) return;
+
+        lock.lock();
+        try {
+            applyChange(uuid, balance);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Applies the current balance of an in-memory account. It is read again under the lock,
+     * so racing changes can't leave an older value on the board.
+     */
+    public void update(UUID uuid, UserAccount account, int currency) {
+        if (cannotEnter(uuid, account.getBalance(currency))) return;
+
+        lock.lock();
+        try {
+            applyChange(uuid, account.getBalance(currency));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private boolean cannotEnter(UUID uuid, BigDecimal balance) {
+        BigDecimal limit = bound;
+        return limit != null && balance.compareTo(limit) <= 0 && !nodes.containsKey(uuid) && !seeding.get();
+    }
+
+    // Caller holds the lock
+    private void applyChange(UUID uuid, BigDecimal balance) {
+        if (changedWhileSeeding != null) changedWhileSeeding.put(uuid, balance);
+        apply(uuid, balance);
+    }
+
+    /**
+     * Removes a player, e.g. after a wipe.
+     */
+    public void remove(UUID uuid) {
+        lock.lock();
+        try {
+            if (changedWhileSeeding != null) changedWhileSeeding.put(uuid, null);
+            drop(uuid);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * True when too few players are tracked to fill the visible positions.
+     */
+    public boolean needsSeed() {
+        return bound != null && nodes.size() < size && !seeding.get();
+    }
+
+    /**
+     * Starts a seed. Changes from here on are replayed over the seeded rows.
+     * @return false if a seed is already running.
+     */
+    public boolean beginSeed() {
+        if (!seeding.compareAndSet(false, true)) return false;
+        lock.lock();
+        try {
+            changedWhileSeeding = new HashMap<>();
+        } finally {
+            lock.unlock();
+        }
+        return true;
+    }
+
+    /**
+     * Replaces the content with seeded rows.
+     *
+     * @param rows Top balances from the database, at most {@link #getSeedLimit()}.
+     * @param live Balances that may be newer than the database (online players), applied on top.
+     */
+    public void finishSeed(Map<UUID, BigDecimal> rows, Map<UUID, BigDecimal> live) {
+        lock.lock();
+        try {
+            ranking.clear();
+            nodes.clear();
+
+            BigDecimal lowest = null;
+            for (Map.Entry<UUID, BigDecimal> row : rows.entrySet()) {
+                insert(new Node(row.getKey(), row.getValue()));
+                if (lowest == null || row.getValue().compareTo(lowest) < 0) lowest = row.getValue();
+            }
+            // A short result means there is nobody else in the DB
+            bound = rows.size() < capacity ? null : lowest;
+
+            live.forEach(this::apply);
+            changedWhileSeeding.forEach((uuid, balance) -> {
+                if (balance != null) {
+                    apply(uuid, balance);
+                } else {
+                    drop(uuid);
+                }
+            });
+        } finally {
+            changedWhileSeeding = null;
+            seeding.set(false);
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Aborts a seed that failed, keeping the current content.
+     */
+    public void cancelSeed() {
+        lock.lock();
+        try {
+            changedWhileSeeding = null;
+            seeding.set(false);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Caller holds the lock
+    private void apply(UUID uuid, BigDecimal balance) {
+        Node old = nodes.get(uuid);
+        if (old != null && old.balance().compareTo(balance) == 0) return;
+        drop(uuid);
+
+        // At or below the bound its rank among untracked players is unknown, leave it out
+        BigDecimal limit = bound;
+        if (limit != null && balance.compareTo(limit) <= 0) return;
+        insert(new Node(uuid, balance));
+
+        while (nodes.size() > capacity) {
+            Node last = ranking.pollLast();
+            nodes.remove(last.uuid());
+            bound = last.balance();
+        }
+    }
+
+    private void insert(Node node) {
+        nodes.put(node.uuid(), node);
+        ranking.add(node);
+    }
+
+    private void drop(UUID uuid) {
+        Node old = nodes.remove(uuid);
+        if (old != null) ranking.remove(old);
+    }
+
+    // --- Reads ---
+
+    /**
+     * Returns visible positions, best first.
+     *
+     * @param offset Positions to skip (0 for the first page).
+     * @param count Maximum number of entries.
+     */
+    public List<LeaderboardEntry> getTop(int offset, int count) {
+        List<LeaderboardEntry> page = new ArrayList<>(Math.max(0, Math.min(count, size - offset)));
+        int rank = 0;
+        Iterator<Node> it = ranking.iterator();
+        while (it.hasNext() && rank < size && page.size() < count) {
+            Node node = it.next();
+            if (rank++ < offset) continue;
+            page.add(entry(rank, node));
+        }
+        return page;
+    }
+
+    /**
+     * Returns the entry at a position, or null if nobody holds it.
+     * @param rank Position, starting at 1.
+     */
+    public LeaderboardEntry get(int rank) {
+        if (rank < 1 || rank > size) return null;
+        int position = 0;
+        for (Node node : ranking) {
+            if (++position == rank) return entry(rank, node);
+        }
+        return null;
+    }
+
+    // Names are looked up outside the lock, so balance changes never wait for them
+    private LeaderboardEntry entry(int rank, Node node) {
+        return new LeaderboardEntry(rank, node.uuid(), names.apply(node.uuid()), node.balance());
+    }
+
+    /**
+     * Returns the position of a player, or 0 if they are not among the visible positions.
+     */
+    public int getRank(UUID uuid) {
+        if (!nodes.containsKey(uuid)) return 0;
+        int position = 0;
+        for (Node node : ranking) {
+            if (++position > size) break;
+            if (node.uuid().equals(uuid)) return position;
+        }
+        return 0;
+    }
+
+    /**
+     * Number of visible positions.
+     */
+    public int getSize() {
+        return size;
+    }
+}
@@ -0,0 +1,56 @@
+package com.vitor.model;
+
+/**
+ * A parsed %veconomy_...% placeholder; rank is only used by the top kinds.
+ * Parsing is done once per distinct params string, rendering only switches on the kind.
+ */
+public record Placeholder(int currency, Kind kind, int rank) {
+
+    public enum Kind { BALANCE, RAW, INPUT, OUTPUT, NET, RANK, TOP_NAME, TOP_AMOUNT }
+
+    public static final Placeholder INVALID = new Placeholder(CurrencyRegistry.UNKNOWN, null, 0);
+
+    /**
+     * Resolves params: <currency>_<kind> or <currency>_top_<n>_name/amount.
+     * Currency IDs may contain underscores, the longest matching one wins.
+     */
+    public static Placeholder parse(CurrencyRegistry registry, String params) {
+        int currency = CurrencyRegistry.UNKNOWN;
+        int idLength = -1;
+        for (String id : registry.ids()) {
+            if (id.length() > idLength && params.length() > id.length() + 1
+                    && params.startsWith(id) && params.charAt(id.length()) == '_') {
+                currency = registry.indexOf(id);
+                idLength = id.length();
+            }
+        }
+        if (currency == CurrencyRegistry.UNKNOWN) return INVALID;
+
+        String kind = params.substring(idLength + 1);
+        switch (kind) {
+            case "balance": return new Placeholder(currency, Kind.BALANCE, 0);
+            case "raw": return new Placeholder(currency, Kind.RAW, 0);
+            case "input": return new Placeholder(currency, Kind.INPUT, 0);
+            case "output": return new Placeholder(currency, Kind.OUTPUT, 0);
+            case "net": return new Placeholder(currency, Kind.NET, 0);
+            case "rank": return new Placeholder(currency, Kind.RANK, 0);
+            default: break;
+        }
+
+        // top_<n>_name / top_<n>_amount
+        if (!kind.startsWith("top_")) return INVALID;
+        int split = kind.indexOf('_', 4);
+        if (split < 0) return INVALID;
+        int rank;
+        try {
+            rank = Integer.parseInt(kind.substring(4, split));
+        } catch (NumberFormatException e) {
+            return INVALID;
+        }
+        return switch (kind.substring(split + 1)) {
+            case "name" -> new Placeholder(currency, Kind.TOP_NAME, rank);
+            case "amount" -> new Placeholder(currency, Kind.TOP_AMOUNT, rank);
+            default -> INVALID;
+        };
+    }
+}
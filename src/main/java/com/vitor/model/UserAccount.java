@@ -1,83 +1,389 @@
 package com.vitor.model;
 
 import java.math.BigDecimal;
-import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
+import java.math.RoundingMode;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 import java.util.concurrent.atomic.DoubleAdder;
-import java.util.concurrent.locks.StampedLock;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * Represents a player's account holding all their currency balances.
- * Implements StampedLock for high-performance optimistic concurrency control.
+ * Each currency lives in its own CAS cell, so writers on different currencies
+ * never contend and writers on the same currency never lose updates.
+ * <p>
+ * Cells are flat arrays indexed by the {@link CurrencyRegistry} index, so callers resolve
+ * the currency ID once and every operation here is a plain array access.
+ * In fixed-point mode the cells hold scaled longs (see {@link FixedPoint}) instead of
+ * BigDecimals, so the arithmetic itself allocates nothing and overflow is detected exactly.
+ * <p>
+ * Every change bumps a per-currency version after the balance is written. A save records
+ * the version it read <i>before</i> the balance, so a write racing the save always leaves
+ * the currency dirty for the next one.
  */
 public class UserAccount {
 
-    private final Map<String, BigDecimal> balances = new ConcurrentHashMap<>();
-    private final Map<String, MetricTracker> metrics = new ConcurrentHashMap<>();
+    // Seeded from the clock so instance IDs keep growing across restarts
+    private static final AtomicLong INSTANCES = new AtomicLong(System.currentTimeMillis() << 16);
 
-    // Lock to ensure consistency in critical read/write operations
-    private final StampedLock lock = new StampedLock();
+    private final CurrencyRegistry registry;
 
-    // Flag to mark if the object has changed and needs to be saved to DB
-    private volatile boolean dirty = false;
+    // Tells a reloaded account apart from an earlier load of the same player, versions restart at 0
+    private final long instanceId = INSTANCES.incrementAndGet();
+
+    // Exactly one of these holds the balances, depending on the registry mode
+    private final AtomicReferenceArray<BigDecimal> balances;
+    private final AtomicLongArray units;
+
+    // Created on first change, most accounts never move most currencies
+    private final AtomicReferenceArray<MetricTracker> metrics;
+    private final int metricsWindow;
+
+    // Per-currency change counter and the counter value last persisted to DB
+    private final AtomicLongArray versions;
+    private final AtomicLongArray savedVersions;
+
+    // Serializes saves of this account, so an older snapshot can't overwrite a newer one in DB
+    private final ReentrantLock saveLock = new ReentrantLock();
+
+    // The DB row of each currency as of the last load or save: its version (NO_ROW if there is
+    // none yet) and the balance this account had then. Only touched under the save lock.
+    private final long[] storedVersions;
+    private final BigDecimal[] storedBalances;
+
+    // Last formatted balance per currency, valid while the version matches. Created on first use;
+    // races only lose a cache entry, and the record's final fields make it safe to publish
+    private record Formatted(long version, String text) {}
+    private Formatted[] formatted;
 
     /**
-     * Safe retrieval of balance using optimistic locking.
+     * A balance captured for persistence, together with the version it is known to include.
      */
-    public BigDecimal getBalance(String currency) {
-        long stamp = lock.tryOptimisticRead();
-        BigDecimal val = balances.getOrDefault(currency, BigDecimal.ZERO);
+    public record Snapshot(int currency, BigDecimal balance, long version) {}
 
-        // If the lock was acquired by a writer during read, upgrade to read lock
-        if (!lock.validate(stamp)) {
-            stamp = lock.readLock();
-            try {
-                val = balances.getOrDefault(currency, BigDecimal.ZERO);
-            } finally {
-                lock.unlockRead(stamp);
-            }
+    public static final int DEFAULT_METRICS_WINDOW = 5;
+
+    /**
+     * Stored version of a currency that has no DB row yet.
+     */
+    public static final long NO_ROW = -1;
+
+    public UserAccount(CurrencyRegistry registry) {
+        this(registry, DEFAULT_METRICS_WINDOW);
+    }
+
+    /**
+     * @param metricsWindow Seconds averaged by the input/output rates.
+     */
+    public UserAccount(CurrencyRegistry registry, int metricsWindow) {
+        this.registry = registry;
+        this.metricsWindow = metricsWindow;
+        int size = registry.size();
+        if (registry.isFixedPoint()) {
+            this.balances = null;
+            this.units = new AtomicLongArray(size);
+        } else {
+            this.balances = new AtomicReferenceArray<>(size);
+            for (int i = 0; i < size; i++) balances.set(i, BigDecimal.ZERO);
+            this.units = null;
         }
-        return val;
+        this.metrics = new AtomicReferenceArray<>(size);
+        this.versions = new AtomicLongArray(size);
+        this.savedVersions = new AtomicLongArray(size);
+        this.storedVersions = new long[size];
+        this.storedBalances = new BigDecimal[size];
+        Arrays.fill(storedVersions, NO_ROW);
+        Arrays.fill(storedBalances, BigDecimal.ZERO);
+    }
+
+    public CurrencyRegistry getRegistry() {
+        return registry;
+    }
+
+    public boolean isFixedPoint() {
+        return units != null;
+    }
+
+    /**
+     * Lock-free retrieval of balance.
+     */
+    public BigDecimal getBalance(int currency) {
+        if (units != null) {
+            return FixedPoint.toDecimal(units.get(currency), registry.scaleOf(currency));
+        }
+        return balances.get(currency);
     }
 
     /**
      * Checks if the user has enough money.
      */
-    public boolean hasEnough(String currency, BigDecimal required) {
+    public boolean hasEnough(int currency, BigDecimal required) {
         return getBalance(currency).compareTo(required) >= 0;
     }
 
     /**
-     * Updates the balance and metrics.
-     * Thread-safe using write lock.
+     * Atomically adds a delta (positive or negative) to the balance.
+     * @return The new balance.
      */
-    public void setBalance(String currency, BigDecimal amount) {
-        long stamp = lock.writeLock();
-        try {
-            BigDecimal old = balances.getOrDefault(currency, BigDecimal.ZERO);
-            balances.put(currency, amount);
-            dirty = true;
+    public BigDecimal add(int currency, BigDecimal delta) {
+        if (units != null) {
+            int scale = registry.scaleOf(currency);
+            return FixedPoint.toDecimal(addUnits(currency, FixedPoint.toUnits(delta, scale)), scale);
+        }
+        BigDecimal old, neo;
+        do {
+            old = balances.get(currency);
+            neo = old.add(delta);
+        } while (!balances.compareAndSet(currency, old, neo));
 
-            // Update metrics only if value changed
-            if (old.compareTo(amount) != 0) {
-                updateMetrics(currency, old, amount);
-            }
-        } finally {
-            lock.unlockWrite(stamp);
+        versions.incrementAndGet(currency);
+        updateMetrics(currency, delta.doubleValue());
+        return neo;
+    }
+
+    /**
+     * Atomically removes an amount only if the balance covers it.
+     * @return The new balance, or null if funds are insufficient (nothing is changed).
+     */
+    public BigDecimal tryWithdraw(int currency, BigDecimal amount) {
+        if (units != null) {
+            int scale = registry.scaleOf(currency);
+            long neo = tryWithdrawUnits(currency, FixedPoint.toUnits(amount, scale));
+            return neo == INSUFFICIENT ? null : FixedPoint.toDecimal(neo, scale);
         }
+        BigDecimal old, neo;
+        do {
+            old = balances.get(currency);
+            if (old.compareTo(amount) < 0) return null;
+            neo = old.subtract(amount);
+        } while (!balances.compareAndSet(currency, old, neo));
+
+        versions.incrementAndGet(currency);
+        updateMetrics(currency, -amount.doubleValue());
+        return neo;
+    }
+
+    /**
+     * Replaces the balance and updates metrics.
+     * @return The previous balance.
+     */
+    public BigDecimal setBalance(int currency, BigDecimal amount) {
+        if (units != null) {
+            int scale = registry.scaleOf(currency);
+            return FixedPoint.toDecimal(setUnits(currency, FixedPoint.toUnits(amount, scale)), scale);
+        }
+        BigDecimal old = balances.getAndSet(currency, amount);
+        versions.incrementAndGet(currency);
+
+        // Update metrics only if value changed
+        if (old.compareTo(amount) != 0) {
+            updateMetrics(currency, amount.subtract(old).doubleValue());
+        }
+        return old;
+    }
+
+    // --- Fixed-point operations (no BigDecimal involved) ---
+
+    /**
+     * Sentinel returned by {@link #tryWithdrawUnits} when funds are insufficient.
+     */
+    public static final long INSUFFICIENT = Long.MIN_VALUE;
+
+    public long getUnits(int currency) {
+        return units.get(currency);
+    }
+
+    /**
+     * Atomically adds a delta in units.
+     * @return The new balance in units.
+     * @throws ArithmeticException if the balance would overflow.
+     */
+    public long addUnits(int currency, long delta) {
+        long old, neo;
+        do {
+            old = units.get(currency);
+            neo = Math.addExact(old, delta);
+        } while (!units.compareAndSet(currency, old, neo));
+
+        versions.incrementAndGet(currency);
+        updateMetrics(currency, FixedPoint.toDouble(delta, registry.scaleOf(currency)));
+        return neo;
+    }
+
+    /**
+     * Atomically removes an amount in units only if the balance covers it.
+     * @return The new balance in units, or {@link #INSUFFICIENT}.
+     */
+    public long tryWithdrawUnits(int currency, long amount) {
+        long old, neo;
+        do {
+            old = units.get(currency);
+            if (old < amount) return INSUFFICIENT;
+            neo = old - amount;
+        } while (!units.compareAndSet(currency, old, neo));
+
+        versions.incrementAndGet(currency);
+        updateMetrics(currency, -FixedPoint.toDouble(amount, registry.scaleOf(currency)));
+        return neo;
+    }
+
+    /**
+     * @return The previous balance in units.
+     */
+    public long setUnits(int currency, long amount) {
+        long old = units.getAndSet(currency, amount);
+        versions.incrementAndGet(currency);
+
+        if (old != amount) {
+            updateMetrics(currency, FixedPoint.toDouble(amount - old, registry.scaleOf(currency)));
+        }
+        return old;
+    }
+
+    // --- Persistence tracking ---
+
+    public long getVersion(int currency) {
+        return versions.get(currency);
+    }
+
+    public boolean isDirty(int currency) {
+        return versions.get(currency) != savedVersions.get(currency);
     }
 
     public boolean isDirty() {
+        for (int i = 0; i < versions.length(); i++) {
+            if (isDirty(i)) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Captures every currency changed since the last save.
+     * The version is read before the balance, so the balance includes at least that version.
+     */
+    public List<Snapshot> collectDirty() {
+        List<Snapshot> dirty = new ArrayList<>(0);
+        for (int i = 0; i < versions.length(); i++) {
+            long version = versions.get(i);
+            if (version != savedVersions.get(i)) {
+                dirty.add(new Snapshot(i, getBalance(i), version));
+            }
+        }
         return dirty;
     }
 
-    public void setClean() {
-        this.dirty = false;
+    /**
+     * Records that the given snapshots are in DB. Changes made after they were taken stay dirty.
+     */
+    public void markSaved(List<Snapshot> saved) {
+        for (Snapshot snapshot : saved) {
+            savedVersions.accumulateAndGet(snapshot.currency(), snapshot.version(), Math::max);
+        }
+    }
+
+    public long getStoredVersion(int currency) {
+        return storedVersions[currency];
+    }
+
+    public BigDecimal getStoredBalance(int currency) {
+        return storedBalances[currency];
+    }
+
+    /**
+     * Records the DB row a currency was loaded from or written to. Call under the save lock.
+     */
+    public void setStored(int currency, BigDecimal balance, long version) {
+        storedBalances[currency] = balance;
+        storedVersions[currency] = version;
+    }
+
+    /**
+     * Applies a change another server made to the stored balance, found when a save conflicted.
+     * It is a change (so it gets saved and caches refresh) but not input/output of this player.
+     * @return The delta actually applied; fixed-point mode drops digits beyond the currency scale.
+     */
+    public BigDecimal applyRemote(int currency, BigDecimal delta) {
+        if (units != null) {
+            int scale = registry.scaleOf(currency);
+            long unitsDelta = FixedPoint.toUnits(delta, scale, RoundingMode.DOWN);
+            units.getAndUpdate(currency, old -> Math.addExact(old, unitsDelta));
+            versions.incrementAndGet(currency);
+            return FixedPoint.toDecimal(unitsDelta, scale);
+        }
+        BigDecimal old;
+        do {
+            old = balances.get(currency);
+        } while (!balances.compareAndSet(currency, old, old.add(delta)));
+        versions.incrementAndGet(currency);
+        return delta;
+    }
+
+    /**
+     * Marks the current state as persisted. Only safe while no other thread can write,
+     * e.g. right after loading the account from DB.
+     */
+    public void markAllSaved() {
+        for (int i = 0; i < versions.length(); i++) {
+            savedVersions.set(i, versions.get(i));
+        }
+    }
+
+    /**
+     * Formats a balance, reusing the cached text while it is unchanged.
+     */
+    public String format(int currency, CurrencyFormatter formatter) {
+        // Version first, so a change racing with formatting only makes the entry stale, never wrong
+        long version = getVersion(currency);
+        String text = getFormatted(currency, version);
+        if (text == null) {
+            text = formatUncached(currency, formatter);
+            cacheFormatted(currency, version, text);
+        }
+        return text;
+    }
+
+    public String formatUncached(int currency, CurrencyFormatter formatter) {
+        return isFixedPoint()
+                ? formatter.format(getUnits(currency), registry.scaleOf(currency))
+                : formatter.format(getBalance(currency));
+    }
+
+    /**
+     * Returns the text cached for this version of a balance, or null if it changed since.
+     */
+    public String getFormatted(int currency, long version) {
+        Formatted[] cache = formatted;
+        Formatted entry = cache != null ? cache[currency] : null;
+        return entry != null && entry.version() == version ? entry.text() : null;
+    }
+
+    /**
+     * Caches the text of a balance. Pass the version read before the balance was.
+     */
+    public void cacheFormatted(int currency, long version, String text) {
+        Formatted[] cache = formatted;
+        if (cache == null) formatted = cache = new Formatted[registry.size()];
+        cache[currency] = new Formatted(version, text);
+    }
+
+    public long getInstanceId() {
+        return instanceId;
+    }
+
+    public ReentrantLock getSaveLock() {
+        return saveLock;
     }
 
-    private void updateMetrics(String currency, BigDecimal oldVal, BigDecimal newVal) {
-        MetricTracker tracker = metrics.computeIfAbsent(currency, k -> new MetricTracker());
-        double diff = newVal.subtract(oldVal).doubleValue();
+    private void updateMetrics(int currency, double diff) {
+        MetricTracker tracker = metrics.get(currency);
+        if (tracker == null) {
+            metrics.compareAndSet(currency, null, new MetricTracker(metricsWindow));
+            tracker = metrics.get(currency);
+        }
         if (diff > 0) {
             tracker.addInput(diff);
         } else if (diff < 0) {
@@ -85,61 +391,91 @@ public class UserAccount {
         }
     }
 
-    public double getInputRate(String currency) {
-        MetricTracker tracker = metrics.get(currency);
-        return tracker == null ? 0.0 : tracker.calculateAverageInput();
-    }
-
-    public double getOutputRate(String currency) {
+    /**
+     * Average earnings per second over the metrics window.
+     */
+    public double getInputRate(int currency) {
         MetricTracker tracker = metrics.get(currency);
-        return tracker == null ? 0.0 : tracker.calculateAverageOutput();
+        return tracker == null ? 0.0 : tracker.getInputRate();
     }
 
     /**
-     * Tick metrics for sliding window calculation.
+     * Average spending per second over the metrics window.
      */
-    public void tickMetrics() {
-        metrics.values().forEach(MetricTracker::tick);
+    public double getOutputRate(int currency) {
+        MetricTracker tracker = metrics.get(currency);
+        return tracker == null ? 0.0 : tracker.getOutputRate();
     }
 
     /**
-     * Inner class to track metrics per second using a Sliding Window algorithm.
-     * Maintains history of the last 5 seconds to smooth out values.
+     * Tracks input/output per second over a sliding window of whole seconds.
+     * Buckets are keyed by epoch second and rolled lazily by the next write or read,
+     * so an idle tracker costs nothing and no global tick is needed.
      */
     public static class MetricTracker {
-        private final DoubleAdder currentSecondInput = new DoubleAdder();
-        private final DoubleAdder currentSecondOutput = new DoubleAdder();
+        // The second being written, lock-free; folded into the ring once it is over
+        private final DoubleAdder currentInput = new DoubleAdder();
+        private final DoubleAdder currentOutput = new DoubleAdder();
+        private volatile long currentSecond;
+
+        // Completed seconds, slot = second % window (guarded by this)
+        private final int window;
+        private final long[] seconds;
+        private final double[] inputHistory;
+        private final double[] outputHistory;
 
-        // 5-second window
-        private final double[] inputHistory = new double[5];
-        private final double[] outputHistory = new double[5];
-        private int pointer = 0;
+        public MetricTracker(int window) {
+            this.window = Math.max(1, window);
+            this.seconds = new long[this.window];
+            this.inputHistory = new double[this.window];
+            this.outputHistory = new double[this.window];
+            this.currentSecond = now();
+        }
 
         public void addInput(double val) {
-            currentSecondInput.add(val);
+            roll(now());
+            currentInput.add(val);
         }
 
         public void addOutput(double val) {
-            currentSecondOutput.add(val);
+            roll(now());
+            currentOutput.add(val);
         }
 
-        // Called by global Scheduler every 1 second (20 ticks)
-        public synchronized void tick() {
-            inputHistory[pointer] = currentSecondInput.sumThenReset();
-            outputHistory[pointer] = currentSecondOutput.sumThenReset();
-            pointer = (pointer + 1) % 5;
+        public double getInputRate() {
+            return average(inputHistory);
         }
 
-        public synchronized double calculateAverageInput() {
-            double sum = 0;
-            for (double v : inputHistory) sum += v;
-            return sum;
+        public double getOutputRate() {
+            return average(outputHistory);
         }
 
-        public synchronized double calculateAverageOutput() {
+        private synchronized double average(double[] history) {
+            long now = now();
+            roll(now);
+            // Only the last 'window' completed seconds count, older slots are leftovers
             double sum = 0;
-            for (double v : outputHistory) sum += v;
-            return sum;
+            for (int i = 0; i < window; i++) {
+                if (seconds[i] >= now - window && seconds[i] < now) sum += history[i];
+            }
+            return sum / window;
+        }
+
+        private void roll(long now) {
+            if (currentSecond == now) return;
+            synchronized (this) {
+                long second = currentSecond;
+                if (second == now) return;
+                int slot = (int) Math.floorMod(second, (long) window);
+                seconds[slot] = second;
+                inputHistory[slot] = currentInput.sumThenReset();
+                outputHistory[slot] = currentOutput.sumThenReset();
+                currentSecond = now;
+            }
+        }
+
+        private static long now() {
+            return System.currentTimeMillis() / 1000L;
         }
     }
-}
\ No newline at end of file
+}
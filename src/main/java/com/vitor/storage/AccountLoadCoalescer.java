@@ -0,0 +1,117 @@
+package com.vitor.storage;
+
+import com.vitor.model.UserAccount;
+
+import java.math.BigDecimal;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Collects account loads that arrive within a short window (a login storm after a restart)
+ * and fetches each batch with a single query on a single connection, so login throughput
+ * scales with the batch size instead of the connection pool size.
+ * <p>
+ * A batch goes out when the window since its first load ends, or as soon as it is full.
+ */
+public class AccountLoadCoalescer {
+
+    private final StorageBackend storage;
+    private final BigDecimal[] defaultBalances;
+    private final long windowMillis;
+    private final int maxBatch;
+    private final Executor executor;
+    private final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(
+            Thread.ofPlatform().name("vEconomy-login-batch").daemon().factory());
+
+    // Guarded by this
+    private Map<UUID, CompletableFuture<UserAccount>> pending = new LinkedHashMap<>();
+    private boolean flushScheduled;
+
+    /**
+     * @param executor Runs the batch queries, so the timer thread never blocks on the database.
+     */
+    public AccountLoadCoalescer(StorageBackend storage, BigDecimal[] defaultBalances, long windowMillis, int maxBatch, Executor executor) {
+        this.storage = storage;
+        this.defaultBalances = defaultBalances;
+        this.windowMillis = windowMillis;
+        this.maxBatch = maxBatch;
+        this.executor = executor;
+    }
+
+    /**
+     * Queues a load. Loads of the same player in one batch share the result.
+     * @return Completes with the account, or exceptionally if the batch query failed.
+     */
+    public CompletableFuture<UserAccount> load(UUID uuid) {
+        Map<UUID, CompletableFuture<UserAccount>> full = null;
+        CompletableFuture<UserAccount> future;
+        synchronized (this) {
+            future = pending.get(uuid);
+            if (future != null) return future;
+            future = new CompletableFuture<>();
+            pending.put(uuid, future);
+
+            if (pending.size() >= maxBatch) {
+                full = takePending();
+            } else if (!flushScheduled) {
+                flushScheduled = true;
+                timer.schedule(this::flush, windowMillis, TimeUnit.MILLISECONDS);
+            }
+        }
+        if (full != null) submit(full);
+        return future;
+    }
+
+    /**
+     * Stops the timer and fails anything still waiting.
+     */
+    public void close() {
+        timer.shutdownNow();
+        Map<UUID, CompletableFuture<UserAccount>> left;
+        synchronized (this) {
+            left = takePending();
+        }
+        RejectedExecutionException closed = new RejectedExecutionException("Account loader closed");
+        left.values().forEach(future -> future.completeExceptionally(closed));
+    }
+
+    private Map<UUID, CompletableFuture<UserAccount>> takePending() {
+        Map<UUID, CompletableFuture<UserAccount>> batch = pending;
+        pending = new LinkedHashMap<>();
+        return batch;
+    }
+
+    private void flush() {
+        Map<UUID, CompletableFuture<UserAccount>> batch;
+        synchronized (this) {
+            flushScheduled = false;
+            if (pending.isEmpty()) return;
+            batch = takePending();
+        }
+        submit(batch);
+    }
+
+    private void submit(Map<UUID, CompletableFuture<UserAccount>> batch) {
+        try {
+            executor.execute(() -> run(batch));
+        } catch (RejectedExecutionException e) {
+            batch.values().forEach(future -> future.completeExceptionally(e));
+        }
+    }
+
+    private void run(Map<UUID, CompletableFuture<UserAccount>> batch) {
+        try {
+            Map<UUID, UserAccount> loaded = storage.loadAccounts(batch.keySet(), defaultBalances);
+            batch.forEach((uuid, future) -> future.complete(loaded.get(uuid)));
+        } catch (RuntimeException e) {
+            batch.values().forEach(future -> future.completeExceptionally(e));
+        }
+    }
+}
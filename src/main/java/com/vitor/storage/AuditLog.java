@@ -0,0 +1,245 @@
+package com.vitor.storage;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Audit log of every balance change, written as NDJSON (one JSON object per line) to rotating
+ * files in the plugin folder ('transactions/').
+ * <p>
+ * Recording only claims a slot of a bounded lock-free ring buffer; formatting and I/O happen on a
+ * background thread that drains the buffer in batches. When the buffer is full the entry is dropped
+ * instead of blocking the transaction, and the writer notes the gap in the file.
+ */
+public class AuditLog {
+
+    public enum Op { DEPOSIT, WITHDRAW, SET, TRANSFER }
+
+    // other is the receiver of a transfer, null otherwise
+    private record Entry(long time, Op op, boolean offline, UUID player, UUID other,
+                         String currencyId, BigDecimal amount, BigDecimal balance) {}
+
+    private static final String ACTIVE_FILE = "transactions.ndjson";
+    private static final String ROTATED_PREFIX = "transactions-";
+    private static final String ROTATED_SUFFIX = ".ndjson";
+    private static final DateTimeFormatter ROTATED_NAME = DateTimeFormatter.ofPattern("yyyyMMdd-HHmmssSSS", Locale.ROOT);
+
+    private final File directory;
+    private final long maxFileBytes;
+    private final int maxFiles;
+    private final long flushIntervalNanos;
+    private final Logger logger;
+
+    private final RingBuffer<Entry> buffer;
+    private final AtomicLong dropped = new AtomicLong();
+    private volatile long written;
+
+    // Writer thread only
+    private final StringBuilder line = new StringBuilder(256);
+    private Writer out;
+    private long fileBytes;
+    private long reportedDrops;
+    private boolean failing;
+
+    private volatile boolean running;
+    private Thread writerThread;
+
+    /**
+     * @param bufferSize Entries that can wait for the writer, rounded up to a power of two.
+     */
+    public AuditLog(File directory, int bufferSize, long maxFileBytes, int maxFiles, long flushIntervalMillis, Logger logger) {
+        this.buffer = new RingBuffer<>(Math.max(1024, bufferSize));
+        this.directory = directory;
+        this.maxFileBytes = Math.max(1L << 16, maxFileBytes);
+        this.maxFiles = Math.max(1, maxFiles);
+        this.flushIntervalNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(1L, flushIntervalMillis));
+        this.logger = logger;
+    }
+
+    /**
+     * Opens the active file (appending to it) and starts the writer thread.
+     */
+    public void open() throws IOException {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Could not create transaction log directory " + directory);
+        }
+        openFile();
+        running = true;
+        writerThread = new Thread(this::writeLoop, "vEconomy-audit");
+        writerThread.setDaemon(true);
+        writerThread.start();
+    }
+
+    /**
+     * Stops the writer after it wrote everything already recorded.
+     */
+    public void close() {
+        running = false;
+        if (writerThread != null) {
+            LockSupport.unpark(writerThread);
+            try {
+                writerThread.join(5000L);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        closeFile();
+    }
+
+    /**
+     * Queues an entry. Never blocks; the entry is dropped if the writer is too far behind.
+     *
+     * @param offline Whether the change was made directly in the database; for a transfer, for either side.
+     * @param other   Receiver of a transfer, or null.
+     * @param balance Player's balance after the change, or null if unknown.
+     */
+    public void record(Op op, boolean offline, UUID player, UUID other, String currencyId, BigDecimal amount, BigDecimal balance) {
+        Entry entry = new Entry(System.currentTimeMillis(), op, offline, player, other, currencyId, amount, balance);
+        if (!buffer.offer(entry)) dropped.incrementAndGet();
+    }
+
+    public long getWritten() {
+        return written;
+    }
+
+    public long getDropped() {
+        return dropped.get();
+    }
+
+    // --- Writer thread ---
+
+    private void writeLoop() {
+        while (true) {
+            // Read before draining, so nothing recorded before close() is left behind
+            boolean stopping = !running;
+            long batch = drain();
+            if (stopping) return;
+            // Under a burst, keep going instead of letting the buffer fill up
+            if (batch < buffer.capacity() / 4) LockSupport.parkNanos(flushIntervalNanos);
+        }
+    }
+
+    // Writes everything published so far as one batch, then flushes once
+    private long drain() {
+        long batch = 0;
+        try {
+            long drops = dropped.get();
+            if (drops != reportedDrops) {
+                write(line.append("{\"ts\":").append(System.currentTimeMillis())
+                        .append(",\"op\":\"dropped\",\"count\":").append(drops - reportedDrops).append("}\n"));
+                reportedDrops = drops;
+            }
+
+            Entry entry;
+            while ((entry = buffer.poll()) != null) {
+                batch++;
+                write(format(entry));
+            }
+            if (out != null) out.flush();
+            written += batch;
+            failing = false;
+            return batch;
+        } catch (IOException e) {
+            // Keep draining so producers never stall; what was lost is counted as dropped
+            dropped.addAndGet(batch);
+            reportedDrops += batch;
+            if (!failing) logger.log(Level.WARNING, "Could not write the transaction log, entries are dropped until it recovers", e);
+            failing = true;
+            closeFile();
+            while (buffer.poll() != null) {
+                dropped.incrementAndGet();
+                reportedDrops++;
+            }
+            return 0;
+        }
+    }
+
+    private StringBuilder format(Entry entry) {
+        line.append("{\"ts\":").append(entry.time())
+                .append(",\"op\":\"").append(entry.op().name().toLowerCase(Locale.ROOT))
+                .append("\",\"player\":\"").append(entry.player());
+        if (entry.other() != null) line.append("\",\"to\":\"").append(entry.other());
+        line.append("\",\"currency\":\"");
+        appendEscaped(entry.currencyId());
+        line.append("\",\"amount\":").append(entry.amount().toPlainString());
+        if (entry.balance() != null) line.append(",\"balance\":").append(entry.balance().toPlainString());
+        if (entry.offline()) line.append(",\"offline\":true");
+        return line.append("}\n");
+    }
+
+    // Currency IDs come from the config, so only the characters JSON requires are escaped
+    private void appendEscaped(String value) {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                line.append('\\').append(c);
+            } else if (c < 0x20) {
+                line.append(String.format("\\u%04x", (int) c));
+            } else {
+                line.append(c);
+            }
+        }
+    }
+
+    private void write(StringBuilder text) throws IOException {
+        try {
+            if (out == null) openFile();
+            out.append(text);
+            // Approximate for non-ASCII currency IDs, which is fine for rotation
+            fileBytes += text.length();
+        } finally {
+            text.setLength(0);
+        }
+        if (fileBytes >= maxFileBytes) rotate();
+    }
+
+    private void openFile() throws IOException {
+        File file = new File(directory, ACTIVE_FILE);
+        fileBytes = file.length();
+        out = Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+    }
+
+    private void closeFile() {
+        if (out == null) return;
+        try {
+            out.close();
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "Could not close the transaction log", e);
+        }
+        out = null;
+    }
+
+    // Renames the full file after the current time and deletes the oldest ones beyond maxFiles
+    private void rotate() throws IOException {
+        out.close();
+        out = null;
+        File active = new File(directory, ACTIVE_FILE);
+        File rotated = new File(directory, ROTATED_PREFIX + LocalDateTime.now().format(ROTATED_NAME) + ROTATED_SUFFIX);
+        if (!active.renameTo(rotated)) throw new IOException("Could not rotate " + active + " to " + rotated.getName());
+
+        File[] files = directory.listFiles((dir, name) -> name.startsWith(ROTATED_PREFIX) && name.endsWith(ROTATED_SUFFIX));
+        if (files != null && files.length > maxFiles) {
+            // The timestamp in the name sorts oldest first
+            Arrays.sort(files);
+            for (int i = 0; i < files.length - maxFiles; i++) {
+                if (!files[i].delete()) logger.warning("Could not delete old transaction log " + files[i].getName());
+            }
+        }
+        openFile();
+    }
+}
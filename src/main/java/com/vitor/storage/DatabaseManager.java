@@ -1,37 +1,113 @@
 package com.vitor.storage;
 
+import com.vitor.api.TransactionRecord;
+import com.vitor.metrics.Telemetry;
+import com.vitor.model.CurrencyRegistry;
+import com.vitor.model.FixedPoint;
 import com.vitor.model.UserAccount;
 import com.vitor.vEconomy;
 import com.zaxxer.hikari.HikariConfig;
 import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.HikariPoolMXBean;
+import org.bukkit.configuration.ConfigurationSection;
 
+import java.io.File;
 import java.math.BigDecimal;
+import java.math.RoundingMode;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.SQLIntegrityConstraintViolationException;
+import java.sql.Types;
+import java.time.YearMonth;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
 import java.util.Map;
+import java.util.Optional;
 import java.util.UUID;
+import java.util.function.Consumer;
 import java.util.logging.Level;
 
-public class DatabaseManager {
+/**
+ * SQL storage through HikariCP: MariaDB/MySQL over the network, or H2 embedded in the plugin folder.
+ * H2 runs in MariaDB mode, so every backend executes the same statements.
+ */
+public class DatabaseManager implements StorageBackend {
 
-    private final vEconomy plugin;
+    private final Host host;
     private HikariDataSource dataSource;
     private final String tableName = "balances";
+    private final String namesTable = "player_names";
+    private final String historyTable = "transactions";
+    // H2 lacks partitions, triggers and named locks
+    private boolean h2;
 
-    public DatabaseManager(vEconomy plugin) {
-        this.plugin = plugin;
-        initConnection();
+    // Rows per multi-row upsert in saveAccounts(); each chunk is one statement and one transaction
+    private static final int FLUSH_CHUNK_ROWS = 500;
+
+    // Rows per round trip while reading the name index at startup
+    private static final int NAME_FETCH_ROWS = 1000;
+
+    // Text to BINARY(16) UUID migration, see migrateUuidColumn()
+    private static final int MIGRATION_CHUNK_ROWS = 1000;
+    private static final long MIGRATION_REPORT_ROWS = 100_000;
+    private static final String MIGRATION_LOCK = "veconomy_uuid_migration";
+    private static final String[] MIGRATION_TRIGGERS = {"_mig_ins", "_mig_upd", "_mig_del"};
+
+    // Monthly partitions of the history table, see maintainHistory()
+    private static final String HISTORY_LOCK = "veconomy_history_maintenance";
+    private static final String HISTORY_OVERFLOW_PARTITION = "pmax";
+    private static final DateTimeFormatter PARTITION_MONTH = DateTimeFormatter.ofPattern("yyyyMM", Locale.ROOT);
+
+    private record PendingSave(UUID uuid, UserAccount account, List<UserAccount.Snapshot> rows) {}
+
+    // A dirty row of a chunk; merged and version are only set if its write lost against another server
+    private static final class RowWrite {
+        final PendingSave pending;
+        final UserAccount.Snapshot snapshot;
+        BigDecimal merged;
+        long version;
+
+        RowWrite(PendingSave pending, UserAccount.Snapshot snapshot) {
+            this.pending = pending;
+            this.snapshot = snapshot;
+        }
+    }
+
+    /**
+     * Connects to a backend type of preferred_db: MariaDB, MySQL or H2.
+     * @throws IllegalArgumentException if the type is unknown.
+     */
+    public static DatabaseManager open(vEconomy plugin, String type) {
+        HikariConfig config = switch (type.toLowerCase(Locale.ROOT)) {
+            case "mariadb", "mysql" -> mariaDbConfig(plugin.getConfig());
+            case "h2" -> h2Config(plugin.getConfig(), plugin.getDataFolder());
+            default -> throw new IllegalArgumentException("Unknown database type: " + type);
+        };
+        return new DatabaseManager(plugin, config);
+    }
+
+    public DatabaseManager(Host host, HikariConfig config) {
+        this.host = host;
+        initConnection(config);
         initTables();
     }
 
-    private void initConnection() {
-        String host = plugin.getConfig().getString("database.host");
-        String port = plugin.getConfig().getString("database.port");
-        String dbName = plugin.getConfig().getString("database.database");
-        String user = plugin.getConfig().getString("database.username");
-        String pass = plugin.getConfig().getString("database.password");
+    private static HikariConfig mariaDbConfig(ConfigurationSection settings) {
+        String host = settings.getString("database.host");
+        String port = settings.getString("database.port");
+        String dbName = settings.getString("database.database");
+        String user = settings.getString("database.username");
+        String pass = settings.getString("database.password");
 
         HikariConfig config = new HikariConfig();
 
@@ -42,19 +118,42 @@ public class DatabaseManager {
         config.setPassword(pass);
 
         // Performance tuning
-        config.setMaximumPoolSize(plugin.getConfig().getInt("database.pool_size", 10));
-        config.setConnectionTimeout(plugin.getConfig().getLong("database.connection_timeout", 5000));
+        config.setMaximumPoolSize(settings.getInt("database.pool_size", 10));
+        config.setConnectionTimeout(settings.getLong("database.connection_timeout", 5000));
         config.setPoolName("vEconomy-Hikari");
 
         // HikariCP recommended settings for MySQL/MariaDB
         config.addDataSourceProperty("cachePrepStmts", "true");
         config.addDataSourceProperty("prepStmtCacheSize", "250");
         config.addDataSourceProperty("prepStmtCacheSqlLimit", "2048");
+        // Batches are still pipelined, but bulk commands don't report per-row update counts,
+        // which the conditional saves need to detect conflicts
+        config.addDataSourceProperty("useBulkStmts", "false");
+        return config;
+    }
+
+    private static HikariConfig h2Config(ConfigurationSection settings, File dataFolder) {
+        File file = new File(dataFolder, settings.getString("database.h2_file", "vEconomy"));
+
+        HikariConfig config = new HikariConfig();
+        config.setDriverClassName("org.h2.Driver");
+        // No JVM shutdown hook: the plugin closes the database itself, after the final save
+        config.setJdbcUrl("jdbc:h2:file:" + file.getAbsolutePath() + ";MODE=MariaDB;DATABASE_TO_LOWER=TRUE;DB_CLOSE_ON_EXIT=FALSE");
+        config.setUsername("sa");
+        config.setPassword("");
+        config.setMaximumPoolSize(settings.getInt("database.pool_size", 10));
+        config.setConnectionTimeout(settings.getLong("database.connection_timeout", 5000));
+        config.setPoolName("vEconomy-Hikari");
+        return config;
+    }
 
+    private void initConnection(HikariConfig config) {
         this.dataSource = new HikariDataSource(config);
 
         try (Connection conn = dataSource.getConnection()) {
-            plugin.getLogger().info("Database connection (MariaDB) established successfully!");
+            String product = conn.getMetaData().getDatabaseProductName();
+            this.h2 = product.equalsIgnoreCase("H2");
+            host.getLogger().info("Database connection (" + product + ") established successfully!");
         } catch (SQLException e) {
             // Runtime exception to stop plugin loading if DB fails
             throw new RuntimeException("Failed to connect to database!", e);
@@ -63,27 +162,263 @@ public class DatabaseManager {
 
     private void initTables() {
         // Schema:
-        // uuid: Player UUID
+        // uuid: Player UUID, 16 bytes (see toBytes)
         // currency_id: Currency identifier (max 32 chars)
         // amount: High precision decimal (30 digits, 4 decimal places)
+        // version: Bumped by every write, so a server saving from a stale load notices (see writeChunk)
         String sql = """
             CREATE TABLE IF NOT EXISTS %s (
-                uuid VARCHAR(36) NOT NULL,
+                uuid BINARY(16) NOT NULL,
                 currency_id VARCHAR(32) NOT NULL,
                 amount DECIMAL(30, 4) NOT NULL DEFAULT 0,
+                version BIGINT NOT NULL DEFAULT 0,
                 PRIMARY KEY (uuid, currency_id),
-                INDEX idx_uuid (uuid)
+                INDEX idx_currency_amount (currency_id, amount)
             ) ENGINE=InnoDB CHARACTER SET utf8mb4 COLLATE utf8mb4_unicode_ci;
         """.formatted(tableName);
+        // Tables created by older versions lack the leaderboard index (added by addIndex, MySQL has no IF NOT EXISTS)
+        String index = "CREATE INDEX idx_currency_amount ON " + tableName + " (currency_id, amount)";
+        // Last known name per UUID. name_lower makes lookups case-insensitive on every backend,
+        // and its index serves both exact and prefix (LIKE 'abc%') searches
+        String names = """
+            CREATE TABLE IF NOT EXISTS %s (
+                uuid BINARY(16) NOT NULL,
+                name VARCHAR(32) NOT NULL,
+                name_lower VARCHAR(32) NOT NULL,
+                updated_at BIGINT NOT NULL,
+                PRIMARY KEY (uuid),
+                INDEX idx_name_lower (name_lower)
+            ) ENGINE=InnoDB CHARACTER SET utf8mb4 COLLATE utf8mb4_unicode_ci;
+        """.formatted(namesTable);
+        // Every balance change, appended in batches (insertHistory). id orders the rows for keyset pages;
+        // on MariaDB/MySQL the table is partitioned by created_at, which must then be part of the primary key
+        String history = """
+            CREATE TABLE IF NOT EXISTS %s (
+                id BIGINT NOT NULL AUTO_INCREMENT,
+                created_at BIGINT NOT NULL,
+                uuid BINARY(16) NOT NULL,
+                counterparty BINARY(16) NULL,
+                currency_id VARCHAR(32) NOT NULL,
+                type VARCHAR(16) NOT NULL,
+                amount DECIMAL(30, 4) NOT NULL,
+                balance DECIMAL(30, 4) NULL,
+                PRIMARY KEY (id, created_at),
+                INDEX idx_history_player (uuid, id),
+                INDEX idx_history_player_currency (uuid, currency_id, id)
+            ) ENGINE=InnoDB CHARACTER SET utf8mb4 COLLATE utf8mb4_unicode_ci
+        """.formatted(historyTable)
+                + (h2 ? "" : " PARTITION BY RANGE (created_at) (PARTITION " + HISTORY_OVERFLOW_PARTITION + " VALUES LESS THAN MAXVALUE)");
 
-        try (Connection conn = dataSource.getConnection();
-             PreparedStatement ps = conn.prepareStatement(sql)) {
-            ps.execute();
+        // Each step on its own, so one failure doesn't leave the other tables missing
+        try (Connection conn = dataSource.getConnection()) {
+            schemaStep("creating the " + tableName + " table", () -> execute(conn, sql));
+            schemaStep("adding the version column", () -> addVersionColumn(conn));
+            schemaStep("converting UUIDs to BINARY(16)", () -> {
+                if (hasTextUuids(conn)) migrateUuidColumn(conn);
+            });
+            schemaStep("creating the leaderboard index", () -> addIndex(conn, tableName, "idx_currency_amount", index));
+            schemaStep("creating the " + namesTable + " table", () -> execute(conn, names));
+            schemaStep("creating the " + historyTable + " table", () -> execute(conn, history));
+        } catch (SQLException e) {
+            host.getLogger().log(Level.SEVERE, "Error creating tables!", e);
+        }
+    }
+
+    private interface SchemaStep {
+        void run() throws SQLException;
+    }
+
+    private void schemaStep(String what, SchemaStep step) {
+        try {
+            step.run();
         } catch (SQLException e) {
-            plugin.getLogger().log(Level.SEVERE, "Error creating tables!", e);
+            host.getLogger().log(Level.SEVERE, "Error " + what + "!", e);
+        }
+    }
+
+    private void addIndex(Connection conn, String table, String name, String ddl) throws SQLException {
+        try (ResultSet indexes = conn.getMetaData().getIndexInfo(conn.getCatalog(), null, table, false, true)) {
+            while (indexes.next()) {
+                if (name.equalsIgnoreCase(indexes.getString("INDEX_NAME"))) return;
+            }
+        }
+        execute(conn, ddl);
+    }
+
+    // Tables created by older versions have no version column; MySQL lacks ADD COLUMN IF NOT EXISTS
+    private void addVersionColumn(Connection conn) throws SQLException {
+        try (ResultSet columns = conn.getMetaData().getColumns(conn.getCatalog(), null, tableName, "version")) {
+            if (columns.next()) return;
+        }
+        try (PreparedStatement ps = conn.prepareStatement("ALTER TABLE " + tableName + " ADD COLUMN version BIGINT NOT NULL DEFAULT 0")) {
+            ps.execute();
+        }
+        host.getLogger().info("Added the version column to " + tableName + ".");
+    }
+
+    // Tables created by older versions store the UUID as text
+    private boolean hasTextUuids(Connection conn) throws SQLException {
+        try (ResultSet columns = conn.getMetaData().getColumns(conn.getCatalog(), null, tableName, "uuid")) {
+            if (!columns.next()) return false;
+            int type = columns.getInt("DATA_TYPE");
+            return type == Types.VARCHAR || type == Types.CHAR;
+        }
+    }
+
+    /**
+     * Rewrites a text UUID table into BINARY(16) while the network keeps running.
+     * Rows are copied into a new table in short chunks, each locking only the rows it copies.
+     * On MariaDB/MySQL triggers mirror writes made meanwhile by other servers, and the tables are
+     * swapped with one atomic RENAME. H2 is embedded, so no one else writes during the copy.
+     */
+    private void migrateUuidColumn(Connection conn) throws SQLException {
+        String newTable = tableName + "_new";
+        String oldTable = tableName + "_old";
+
+        // Servers starting at the same time must not migrate twice
+        if (!h2) {
+            try (PreparedStatement ps = conn.prepareStatement("SELECT GET_LOCK(?, 600)")) {
+                ps.setString(1, MIGRATION_LOCK);
+                try (ResultSet rs = ps.executeQuery()) {
+                    if (!rs.next() || rs.getInt(1) != 1) throw new SQLException("Timed out waiting for the UUID migration lock");
+                }
+            }
+        }
+        try {
+            if (!hasTextUuids(conn)) return;
+            host.getLogger().info("Converting UUIDs of " + tableName + " to BINARY(16)...");
+
+            // Leftovers of an interrupted run
+            for (String trigger : MIGRATION_TRIGGERS) {
+                execute(conn, "DROP TRIGGER IF EXISTS " + tableName + trigger);
+            }
+            execute(conn, "DROP TABLE IF EXISTS " + newTable);
+            execute(conn, """
+                CREATE TABLE %s (
+                    uuid BINARY(16) NOT NULL,
+                    currency_id VARCHAR(32) NOT NULL,
+                    amount DECIMAL(30, 4) NOT NULL DEFAULT 0,
+                    version BIGINT NOT NULL DEFAULT 0,
+                    PRIMARY KEY (uuid, currency_id)
+                ) ENGINE=InnoDB CHARACTER SET utf8mb4 COLLATE utf8mb4_unicode_ci
+            """.formatted(newTable));
+
+            if (!h2) {
+                String upsert = """
+                    INSERT INTO %s (uuid, currency_id, amount, version)
+                    VALUES (UNHEX(REPLACE(NEW.uuid, '-', '')), NEW.currency_id, NEW.amount, NEW.version)
+                    ON DUPLICATE KEY UPDATE amount = VALUES(amount), version = VALUES(version)
+                """.formatted(newTable);
+                execute(conn, "CREATE TRIGGER " + tableName + "_mig_ins AFTER INSERT ON " + tableName + " FOR EACH ROW " + upsert);
+                execute(conn, "CREATE TRIGGER " + tableName + "_mig_upd AFTER UPDATE ON " + tableName + " FOR EACH ROW " + upsert);
+                execute(conn, "CREATE TRIGGER " + tableName + "_mig_del AFTER DELETE ON " + tableName + " FOR EACH ROW DELETE FROM "
+                        + newTable + " WHERE uuid = UNHEX(REPLACE(OLD.uuid, '-', '')) AND currency_id = OLD.currency_id");
+            }
+
+            long copied = copyToBinary(newTable);
+
+            if (h2) {
+                execute(conn, "ALTER TABLE " + tableName + " RENAME TO " + oldTable);
+                execute(conn, "ALTER TABLE " + newTable + " RENAME TO " + tableName);
+            } else {
+                execute(conn, "RENAME TABLE " + tableName + " TO " + oldTable + ", " + newTable + " TO " + tableName);
+                // Triggers moved along with the old table
+                for (String trigger : MIGRATION_TRIGGERS) {
+                    execute(conn, "DROP TRIGGER IF EXISTS " + tableName + trigger);
+                }
+            }
+            execute(conn, "DROP TABLE " + oldTable);
+            host.getLogger().info("Converted " + copied + " rows of " + tableName + " to BINARY(16) UUIDs.");
+        } finally {
+            if (!h2) {
+                try (PreparedStatement ps = conn.prepareStatement("SELECT RELEASE_LOCK(?)")) {
+                    ps.setString(1, MIGRATION_LOCK);
+                    ps.execute();
+                }
+            }
+        }
+    }
+
+    // Copies the text table in keyset chunks. Reading with FOR UPDATE makes concurrent writes to
+    // a chunk wait until it is copied, and INSERT IGNORE keeps rows the triggers wrote first.
+    private long copyToBinary(String newTable) throws SQLException {
+        String select = "SELECT uuid, currency_id, amount, version FROM " + tableName
+                + " WHERE uuid > ? OR (uuid = ? AND currency_id > ?) ORDER BY uuid, currency_id LIMIT ? FOR UPDATE";
+        String insert = "INSERT IGNORE INTO " + newTable + " (uuid, currency_id, amount, version) VALUES (?, ?, ?, ?)";
+        String[] last = {"", ""};
+        long copied = 0;
+        long nextReport = MIGRATION_REPORT_ROWS;
+
+        while (true) {
+            int rows = inTransaction(conn -> {
+                int count = 0;
+                try (PreparedStatement selectPs = conn.prepareStatement(select);
+                     PreparedStatement insertPs = conn.prepareStatement(insert)) {
+                    selectPs.setString(1, last[0]);
+                    selectPs.setString(2, last[0]);
+                    selectPs.setString(3, last[1]);
+                    selectPs.setInt(4, MIGRATION_CHUNK_ROWS);
+                    try (ResultSet rs = selectPs.executeQuery()) {
+                        while (rs.next()) {
+                            count++;
+                            last[0] = rs.getString(1);
+                            last[1] = rs.getString(2);
+                            UUID uuid;
+                            try {
+                                uuid = UUID.fromString(last[0]);
+                            } catch (IllegalArgumentException e) {
+                                host.getLogger().warning("Skipping row with invalid UUID '" + last[0] + "' (" + last[1] + ")");
+                                continue;
+                            }
+                            insertPs.setBytes(1, toBytes(uuid));
+                            insertPs.setString(2, last[1]);
+                            insertPs.setBigDecimal(3, rs.getBigDecimal(3));
+                            insertPs.setLong(4, rs.getLong(4));
+                            insertPs.addBatch();
+                        }
+                    }
+                    insertPs.executeBatch();
+                }
+                return count;
+            });
+            copied += rows;
+            if (copied >= nextReport) {
+                host.getLogger().info("Copied " + copied + " rows...");
+                nextReport += MIGRATION_REPORT_ROWS;
+            }
+            if (rows < MIGRATION_CHUNK_ROWS) return copied;
+        }
+    }
+
+    private static void execute(Connection conn, String sql) throws SQLException {
+        try (PreparedStatement ps = conn.prepareStatement(sql)) {
+            ps.execute();
+        }
+    }
+
+    // UUIDs are stored as 16 big-endian bytes, which keeps their string order
+    private static byte[] toBytes(UUID uuid) {
+        byte[] bytes = new byte[16];
+        long msb = uuid.getMostSignificantBits();
+        long lsb = uuid.getLeastSignificantBits();
+        for (int i = 0; i < 8; i++) {
+            bytes[i] = (byte) (msb >>> (56 - 8 * i));
+            bytes[8 + i] = (byte) (lsb >>> (56 - 8 * i));
+        }
+        return bytes;
+    }
+
+    private static UUID toUuid(byte[] bytes) {
+        long msb = 0;
+        long lsb = 0;
+        for (int i = 0; i < 8; i++) {
+            msb = (msb << 8) | (bytes[i] & 0xFF);
+            lsb = (lsb << 8) | (bytes[8 + i] & 0xFF);
         }
+        return new UUID(msb, lsb);
     }
 
+    @Override
     public void close() {
         if (dataSource != null && !dataSource.isClosed()) {
             dataSource.close();
@@ -94,79 +429,1119 @@ public class DatabaseManager {
      * Loads account data synchronously.
      * Applies default balances if no data is found.
      */
-    public UserAccount loadAccount(UUID uuid, Map<String, Double> defaultBalances) {
-        UserAccount account = new UserAccount();
-
-        // 1. Apply initial defaults first
-        defaultBalances.forEach((currency, startBal) ->
-                account.setBalance(currency, BigDecimal.valueOf(startBal)));
-
-        // 2. Overwrite with database data
-        String sql = "SELECT currency_id, amount FROM " + tableName + " WHERE uuid = ?";
+    @Override
+    public UserAccount loadAccount(UUID uuid, BigDecimal[] defaultBalances) {
+        long start = System.nanoTime();
+        Loading loading = new Loading(host.newAccount(), defaultBalances);
+        String sql = "SELECT currency_id, amount, version FROM " + tableName + " WHERE uuid = ?";
 
         try (Connection conn = dataSource.getConnection();
              PreparedStatement ps = conn.prepareStatement(sql)) {
 
-            ps.setString(1, uuid.toString());
+            ps.setBytes(1, toBytes(uuid));
             try (ResultSet rs = ps.executeQuery()) {
                 while (rs.next()) {
-                    String currency = rs.getString("currency_id");
-                    BigDecimal amount = rs.getBigDecimal("amount");
-                    account.setBalance(currency, amount);
+                    loading.readRow(rs);
                 }
             }
             // Mark as clean since it matches DB
-            account.setClean();
+            loading.account.markAllSaved();
         } catch (SQLException e) {
-            plugin.getLogger().log(Level.SEVERE, "Failed to load account: " + uuid, e);
+            host.getLogger().log(Level.SEVERE, "Failed to load account: " + uuid, e);
+        } finally {
+            timed("db.loadAccount", start);
         }
-        return account;
+        return loading.finish();
     }
 
     /**
-     * Saves user account data to the database.
+     * Loads many accounts with one query (a single WHERE uuid IN (...) on one connection).
+     * Unlike {@link #loadAccount}, a failure is thrown instead of falling back to defaults.
      */
+    @Override
+    public Map<UUID, UserAccount> loadAccounts(Collection<UUID> uuids, BigDecimal[] defaultBalances) {
+        Map<UUID, UserAccount> result = new HashMap<>();
+        if (uuids.isEmpty()) return result;
+        long start = System.nanoTime();
+
+        Map<UUID, Loading> loadings = new HashMap<>();
+        StringBuilder sql = new StringBuilder(96 + uuids.size() * 3)
+                .append("SELECT uuid, currency_id, amount, version FROM ").append(tableName).append(" WHERE uuid IN (");
+        for (UUID uuid : uuids) {
+            sql.append(loadings.isEmpty() ? "?" : ", ?");
+            loadings.put(uuid, new Loading(host.newAccount(), defaultBalances));
+        }
+        sql.append(')');
+
+        try (Connection conn = dataSource.getConnection();
+             PreparedStatement ps = conn.prepareStatement(sql.toString())) {
+            int param = 1;
+            for (UUID uuid : loadings.keySet()) {
+                ps.setBytes(param++, toBytes(uuid));
+            }
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    Loading loading = loadings.get(toUuid(rs.getBytes("uuid")));
+                    if (loading != null) loading.readRow(rs);
+                }
+            }
+        } catch (SQLException e) {
+            host.getLogger().log(Level.SEVERE, "Failed to load " + uuids.size() + " accounts", e);
+            throw new RuntimeException("Database error during batch load", e);
+        } finally {
+            timed("db.loadAccounts", start);
+        }
+
+        loadings.forEach((uuid, loading) -> {
+            loading.account.markAllSaved();
+            result.put(uuid, loading.finish());
+        });
+        return result;
+    }
+
+    // An account being filled from its rows, on top of the default balances
+    private static final class Loading {
+        final UserAccount account;
+        final long[] rowVersions;
+
+        Loading(UserAccount account, BigDecimal[] defaultBalances) {
+            this.account = account;
+            this.rowVersions = new long[defaultBalances.length];
+            Arrays.fill(rowVersions, UserAccount.NO_ROW);
+            for (int i = 0; i < defaultBalances.length; i++) {
+                account.setBalance(i, defaultBalances[i]);
+            }
+        }
+
+        void readRow(ResultSet rs) throws SQLException {
+            CurrencyRegistry registry = account.getRegistry();
+            int currency = registry.indexOf(rs.getString("currency_id"));
+            if (currency == CurrencyRegistry.UNKNOWN) return; // Currency removed from config
+
+            BigDecimal amount = rs.getBigDecimal("amount");
+            if (account.isFixedPoint()) {
+                // Stored values may carry more decimals than the currency scale; never round up
+                account.setUnits(currency, FixedPoint.toUnits(amount, registry.scaleOf(currency), RoundingMode.DOWN));
+            } else {
+                account.setBalance(currency, amount);
+            }
+            rowVersions[currency] = rs.getLong("version");
+        }
+
+        UserAccount finish() {
+            // After a failed load the rows look missing, so saves merge into them instead of overwriting
+            for (int i = 0; i < rowVersions.length; i++) {
+                account.setStored(i, account.getBalance(i), rowVersions[i]);
+            }
+            return account;
+        }
+    }
+
+    /**
+     * Saves the currencies that changed since the last save.
+     * A change that lands while the batch runs stays dirty and goes out with the next save.
+     */
+    @Override
     public void saveAccount(UUID uuid, UserAccount account) {
         if (!account.isDirty()) return; // Skip if no changes
+        long start = System.nanoTime();
+
+        account.getSaveLock().lock();
+        List<UserAccount.Snapshot> dirty = account.collectDirty();
+        if (dirty.isEmpty()) {
+            account.getSaveLock().unlock();
+            return;
+        }
+        List<PendingSave> chunk = new ArrayList<>(List.of(new PendingSave(uuid, account, dirty)));
+
+        try (Connection conn = dataSource.getConnection()) {
+            conn.setAutoCommit(false);
+            try {
+                if (writeChunk(conn, chunk) > 0 && host.isLoggingEnabled()) {
+                    host.getLogger().info("Data saved for: " + uuid);
+                }
+            } finally {
+                conn.setAutoCommit(true);
+            }
+        } catch (SQLException e) {
+            host.getLogger().log(Level.SEVERE, "CRITICAL ERROR SAVING: " + uuid, e);
+        } finally {
+            timed("db.saveAccount", start);
+            // Only non-empty if no connection could be opened
+            chunk.forEach(pending -> pending.account().getSaveLock().unlock());
+        }
+    }
+
+    /**
+     * Flushes every dirty account on a single connection.
+     * Rows are grouped into chunks of about {@value #FLUSH_CHUNK_ROWS} rows, one batch and one transaction
+     * per chunk, so a full save costs a few round-trips instead of one batch per account.
+     *
+     * @param waitForLocks If false, accounts being saved by another thread are skipped and stay
+     *                     dirty for the next flush. Shutdown passes true so nothing is left behind.
+     */
+    @Override
+    public void saveAccounts(Map<UUID, UserAccount> accounts, boolean waitForLocks) {
+        if (accounts.isEmpty()) return;
+        long start = System.nanoTime();
+
+        List<PendingSave> chunk = new ArrayList<>();
+        int rows = 0;
+        int savedAccounts = 0;
+        int chunks = 0;
+
+        try (Connection conn = dataSource.getConnection()) {
+            conn.setAutoCommit(false);
+            try {
+                for (Map.Entry<UUID, UserAccount> entry : accounts.entrySet()) {
+                    UserAccount account = entry.getValue();
+                    if (!account.isDirty()) continue;
+                    if (waitForLocks) {
+                        account.getSaveLock().lock();
+                    } else if (!account.getSaveLock().tryLock()) {
+                        continue;
+                    }
+
+                    List<UserAccount.Snapshot> dirty = account.collectDirty();
+                    if (dirty.isEmpty()) {
+                        account.getSaveLock().unlock();
+                        continue;
+                    }
+                    chunk.add(new PendingSave(entry.getKey(), account, dirty));
+                    rows += dirty.size();
+
+                    if (rows >= FLUSH_CHUNK_ROWS) {
+                        savedAccounts += writeChunk(conn, chunk);
+                        chunks++;
+                        rows = 0;
+                    }
+                }
+                if (!chunk.isEmpty()) {
+                    savedAccounts += writeChunk(conn, chunk);
+                    chunks++;
+                }
+            } finally {
+                // Only non-empty if the loop itself failed
+                chunk.forEach(pending -> pending.account().getSaveLock().unlock());
+                conn.setAutoCommit(true);
+            }
+        } catch (SQLException e) {
+            host.getLogger().log(Level.SEVERE, "CRITICAL ERROR during batch save!", e);
+        } finally {
+            timed("db.saveAccounts", start);
+        }
+
+        if (host.isLoggingEnabled() && savedAccounts > 0) {
+            host.getLogger().info("Batch save: " + savedAccounts + " accounts in " + chunks + " chunk(s).");
+        }
+    }
+
+    /**
+     * Writes one chunk and commits it. Every write is conditional on the row version the account
+     * last saw, so a save based on a stale load (e.g. the player already moved to another server
+     * of the network) can't overwrite newer data. Conflicting rows get the local delta merged
+     * into what is stored instead, and the other server's delta is applied to the account.
+     * Releases the save locks of every account in the chunk and clears it.
+     * @return Number of accounts persisted (0 if the chunk was rolled back).
+     */
+    private int writeChunk(Connection conn, List<PendingSave> chunk) throws SQLException {
+        long start = System.nanoTime();
+        String update = "UPDATE " + tableName + " SET amount = ?, version = version + 1 WHERE uuid = ? AND currency_id = ? AND version = ?";
+        String insert = "INSERT IGNORE INTO " + tableName + " (uuid, currency_id, amount, version) VALUES (?, ?, ?, 0)";
+
+        List<RowWrite> updates = new ArrayList<>();
+        List<RowWrite> inserts = new ArrayList<>();
+        List<RowWrite> conflicts = new ArrayList<>();
+        try (PreparedStatement updatePs = conn.prepareStatement(update);
+             PreparedStatement insertPs = conn.prepareStatement(insert)) {
+            for (PendingSave pending : chunk) {
+                byte[] uuid = toBytes(pending.uuid());
+                UserAccount account = pending.account();
+                CurrencyRegistry registry = account.getRegistry();
+                for (UserAccount.Snapshot snapshot : pending.rows()) {
+                    long expected = account.getStoredVersion(snapshot.currency());
+                    if (expected == UserAccount.NO_ROW) {
+                        insertPs.setBytes(1, uuid);
+                        insertPs.setString(2, registry.idOf(snapshot.currency()));
+                        insertPs.setBigDecimal(3, snapshot.balance());
+                        insertPs.addBatch();
+                        inserts.add(new RowWrite(pending, snapshot));
+                    } else {
+                        updatePs.setBigDecimal(1, snapshot.balance());
+                        updatePs.setBytes(2, uuid);
+                        updatePs.setString(3, registry.idOf(snapshot.currency()));
+                        updatePs.setLong(4, expected);
+                        updatePs.addBatch();
+                        updates.add(new RowWrite(pending, snapshot));
+                    }
+                }
+            }
+            collectConflicts(updates.isEmpty() ? new int[0] : updatePs.executeBatch(), updates, conflicts);
+            collectConflicts(inserts.isEmpty() ? new int[0] : insertPs.executeBatch(), inserts, conflicts);
+            for (RowWrite conflict : conflicts) merge(conn, conflict);
+            conn.commit();
+
+            for (RowWrite written : updates) {
+                UserAccount.Snapshot snapshot = written.snapshot;
+                UserAccount account = written.pending.account();
+                account.setStored(snapshot.currency(), snapshot.balance(), account.getStoredVersion(snapshot.currency()) + 1);
+            }
+            for (RowWrite written : inserts) {
+                UserAccount account = written.pending.account();
+                int currency = written.snapshot.currency();
+                // The start balance the account was loaded with is stored from now on
+                host.onRowsCreated(account.getRegistry().idOf(currency), account.getStoredBalance(currency));
+                account.setStored(currency, written.snapshot.balance(), 0);
+            }
+            for (RowWrite conflict : conflicts) {
+                UserAccount account = conflict.pending.account();
+                int currency = conflict.snapshot.currency();
+                BigDecimal remote = account.applyRemote(currency, conflict.merged.subtract(conflict.snapshot.balance()));
+                account.setStored(currency, conflict.snapshot.balance().add(remote), conflict.version);
+                if (remote.signum() != 0) host.onRemoteChange(conflict.pending.uuid(), account, currency, remote);
+            }
+            if (!conflicts.isEmpty()) {
+                host.getLogger().warning("Merged " + conflicts.size() + " balance(s) changed meanwhile by another server.");
+            }
+
+            chunk.forEach(pending -> markSaved(pending.uuid(), pending.account(), pending.rows()));
+            return chunk.size();
+        } catch (SQLException e) {
+            conn.rollback();
+            host.getLogger().log(Level.SEVERE, "CRITICAL ERROR SAVING chunk of " + chunk.size() + " accounts", e);
+            return 0;
+        } finally {
+            timed("db.saveChunk", start);
+            chunk.forEach(pending -> pending.account().getSaveLock().unlock());
+            chunk.clear();
+        }
+    }
+
+    // A write that matched no row lost the race; moves it from the written list to the conflicts
+    private static void collectConflicts(int[] counts, List<RowWrite> written, List<RowWrite> conflicts) {
+        for (int i = counts.length - 1; i >= 0; i--) {
+            if (counts[i] == 0) conflicts.add(written.remove(i));
+        }
+    }
+
+    /**
+     * Adds the local delta (balance now minus balance at the last load/save) to the stored row
+     * and reads the result back; the row stays locked until commit.
+     */
+    private void merge(Connection conn, RowWrite conflict) throws SQLException {
+        UserAccount account = conflict.pending.account();
+        int currency = conflict.snapshot.currency();
+        byte[] uuid = toBytes(conflict.pending.uuid());
+        String currencyId = account.getRegistry().idOf(currency);
+        BigDecimal delta = conflict.snapshot.balance().subtract(account.getStoredBalance(currency));
+
+        String update = "UPDATE " + tableName + " SET amount = amount + ?, version = version + 1 WHERE uuid = ? AND currency_id = ?";
+        try (PreparedStatement ps = conn.prepareStatement(update)) {
+            ps.setBigDecimal(1, delta);
+            ps.setBytes(2, uuid);
+            ps.setString(3, currencyId);
+            if (ps.executeUpdate() == 0) {
+                // Wiped meanwhile: what this server holds is all there is
+                String insert = "INSERT INTO " + tableName + " (uuid, currency_id, amount, version) VALUES (?, ?, ?, 0)";
+                try (PreparedStatement insertPs = conn.prepareStatement(insert)) {
+                    insertPs.setBytes(1, uuid);
+                    insertPs.setString(2, currencyId);
+                    insertPs.setBigDecimal(3, conflict.snapshot.balance());
+                    insertPs.executeUpdate();
+                }
+            }
+        }
+
+        String select = "SELECT amount, version FROM " + tableName + " WHERE uuid = ? AND currency_id = ?";
+        try (PreparedStatement ps = conn.prepareStatement(select)) {
+            ps.setBytes(1, uuid);
+            ps.setString(2, currencyId);
+            try (ResultSet rs = ps.executeQuery()) {
+                if (!rs.next()) throw new SQLException("Row vanished while merging " + conflict.pending.uuid() + " " + currencyId);
+                conflict.merged = rs.getBigDecimal(1);
+                conflict.version = rs.getLong(2);
+            }
+        }
+    }
+
+    // Only after commit: the journal marker says these versions no longer need replaying
+    private void markSaved(UUID uuid, UserAccount account, List<UserAccount.Snapshot> rows) {
+        account.markSaved(rows);
+        TransactionJournal journal = host.getJournal();
+        if (journal != null) journal.recordSaved(uuid, account, rows);
+    }
+
+    // --- Offline mutations (atomic on the database, no load -> modify -> save) ---
+
+    @FunctionalInterface
+    private interface TransactionWork<T> {
+        /**
+         * @return The result to commit, or null to roll back.
+         */
+        T run(Connection conn) throws SQLException;
+    }
+
+    /**
+     * Atomically adds to a balance stored in the database.
+     * A missing row starts from the given start balance.
+     *
+     * @return The new balance.
+     * @throws RuntimeException if the database fails (nothing is applied).
+     */
+    @Override
+    public BigDecimal depositOffline(UUID uuid, String currencyId, BigDecimal amount, BigDecimal startBalance) {
+        long start = System.nanoTime();
+        Map<String, BigDecimal> created = new HashMap<>();
+        try {
+            BigDecimal balance = inTransaction(conn -> {
+                created.clear();
+                return depositOn(conn, uuid, currencyId, amount, startBalance, created);
+            });
+            created.forEach(host::onRowsCreated);
+            return balance;
+        } catch (SQLException e) {
+            host.getLogger().log(Level.SEVERE, "Failed offline deposit: " + uuid, e);
+            throw new RuntimeException("Database error during offline deposit", e);
+        } finally {
+            timed("db.depositOffline", start);
+        }
+    }
+
+    /**
+     * Atomically adds a change that may be negative to a balance stored in the database; used to replay
+     * the journal on top of whatever other servers wrote meanwhile. A missing row starts from the start balance.
+     *
+     * @throws RuntimeException if the database fails (nothing is applied).
+     */
+    @Override
+    public BigDecimal mergeOffline(UUID uuid, String currencyId, BigDecimal delta, BigDecimal startBalance) {
+        long start = System.nanoTime();
+        Map<String, BigDecimal> created = new HashMap<>();
+        try {
+            BigDecimal balance = inTransaction(conn -> {
+                created.clear();
+                return depositOn(conn, uuid, currencyId, delta, startBalance, created);
+            });
+            created.forEach(host::onRowsCreated);
+            return balance;
+        } catch (SQLException e) {
+            host.getLogger().log(Level.SEVERE, "Failed offline merge: " + uuid, e);
+            throw new RuntimeException("Database error during offline merge", e);
+        } finally {
+            timed("db.mergeOffline", start);
+        }
+    }
+
+    /**
+     * Atomically removes from a balance stored in the database, only if it covers the amount.
+     * A missing row starts from the given start balance.
+     *
+     * @return The new balance, or null if funds are insufficient (nothing is applied).
+     * @throws RuntimeException if the database fails (nothing is applied).
+     */
+    @Override
+    public BigDecimal withdrawOffline(UUID uuid, String currencyId, BigDecimal amount, BigDecimal startBalance) {
+        long start = System.nanoTime();
+        Map<String, BigDecimal> created = new HashMap<>();
+        try {
+            BigDecimal balance = inTransaction(conn -> {
+                created.clear();
+                return withdrawOn(conn, uuid, currencyId, amount, startBalance, created);
+            });
+            created.forEach(host::onRowsCreated);
+            return balance;
+        } catch (SQLException e) {
+            host.getLogger().log(Level.SEVERE, "Failed offline withdraw: " + uuid, e);
+            throw new RuntimeException("Database error during offline withdraw", e);
+        } finally {
+            timed("db.withdrawOffline", start);
+        }
+    }
+
+    /**
+     * Applies several changes in one transaction: either all of them or none.
+     * Rows are touched in (uuid, currency) order, so concurrent callers can't deadlock each other.
+     *
+     * @return The balance after each change, in the given order, or null if a withdrawal was not covered (nothing is applied).
+     * @throws RuntimeException if the database fails (nothing is applied).
+     */
+    @Override
+    public List<BigDecimal> applyOffline(List<OfflineChange> changes) {
+        if (changes.isEmpty()) return List.of();
+        long start = System.nanoTime();
 
+        // Stable sort: changes to the same row keep their relative order
+        Integer[] order = new Integer[changes.size()];
+        for (int i = 0; i < order.length; i++) order[i] = i;
+        Arrays.sort(order, Comparator.comparing((Integer i) -> changes.get(i).uuid()).thenComparing(i -> changes.get(i).currencyId()));
+        Map<String, BigDecimal> created = new HashMap<>();
+        try {
+            List<BigDecimal> result = inTransaction(conn -> {
+                created.clear();
+                BigDecimal[] balances = new BigDecimal[changes.size()];
+                for (int i : order) {
+                    OfflineChange change = changes.get(i);
+                    if (change.delta().signum() >= 0) {
+                        balances[i] = depositOn(conn, change.uuid(), change.currencyId(), change.delta(), change.startBalance(), created);
+                    } else if ((balances[i] = withdrawOn(conn, change.uuid(), change.currencyId(), change.delta().negate(), change.startBalance(), created)) == null) {
+                        return null;
+                    }
+                }
+                return Arrays.asList(balances);
+            });
+            if (result != null) created.forEach(host::onRowsCreated);
+            return result;
+        } catch (SQLException e) {
+            host.getLogger().log(Level.SEVERE, "Failed offline transaction of " + changes.size() + " changes", e);
+            throw new RuntimeException("Database error during offline transaction", e);
+        } finally {
+            timed("db.applyOffline", start);
+        }
+    }
+
+    /**
+     * Adds amounts to many offline balances of one currency with set-based statements:
+     * per chunk, one multi-row upsert plus one SELECT of the new balances, in one transaction.
+     * A missing row starts from the given start balance.
+     *
+     * @return New balance per player. Players of a chunk that failed are absent.
+     */
+    @Override
+    public Map<UUID, BigDecimal> depositAllOffline(String currencyId, Map<UUID, BigDecimal> amounts, BigDecimal startBalance) {
+        long start = System.nanoTime();
+        Map<UUID, BigDecimal> result = new HashMap<>();
+        if (amounts.isEmpty()) return result;
+
+        List<Map.Entry<UUID, BigDecimal>> entries = new ArrayList<>(amounts.entrySet());
+        // Same row order on every server, so concurrent payouts can't deadlock
+        entries.sort(Map.Entry.comparingByKey());
+
+        try (Connection conn = dataSource.getConnection()) {
+            conn.setAutoCommit(false);
+            try {
+                for (int from = 0; from < entries.size(); from += FLUSH_CHUNK_ROWS) {
+                    List<Map.Entry<UUID, BigDecimal>> chunk = entries.subList(from, Math.min(entries.size(), from + FLUSH_CHUNK_ROWS));
+                    try {
+                        Map<String, BigDecimal> created = new HashMap<>();
+                        Map<UUID, BigDecimal> balances = depositChunk(conn, currencyId, chunk, startBalance, created);
+                        conn.commit();
+                        result.putAll(balances);
+                        created.forEach(host::onRowsCreated);
+                    } catch (SQLException e) {
+                        conn.rollback();
+                        host.getLogger().log(Level.SEVERE, "Failed bulk deposit chunk of " + chunk.size() + " players", e);
+                    }
+                }
+            } finally {
+                conn.setAutoCommit(true);
+            }
+        } catch (SQLException e) {
+            host.getLogger().log(Level.SEVERE, "Failed bulk deposit", e);
+        } finally {
+            timed("db.depositAllOffline", start);
+        }
+        return result;
+    }
+
+    private Map<UUID, BigDecimal> depositChunk(Connection conn, String currencyId, List<Map.Entry<UUID, BigDecimal>> chunk,
+                                               BigDecimal startBalance, Map<String, BigDecimal> created) throws SQLException {
+        // Inserted rows get start + amount; existing rows add (start + amount) - start
+        StringBuilder upsert = new StringBuilder(96 + chunk.size() * 11)
+                .append("INSERT INTO ").append(tableName).append(" (uuid, currency_id, amount) VALUES ");
+        StringBuilder select = new StringBuilder(80 + chunk.size() * 3)
+                .append("SELECT uuid, amount FROM ").append(tableName).append(" WHERE currency_id = ? AND uuid IN (");
+        for (int i = 0; i < chunk.size(); i++) {
+            upsert.append(i == 0 ? "(?, ?, ?)" : ", (?, ?, ?)");
+            select.append(i == 0 ? "?" : ", ?");
+        }
+        upsert.append(" ON DUPLICATE KEY UPDATE amount = amount + VALUES(amount) - ?, version = version + 1");
+        select.append(')');
+
+        // Rows missing before the upsert are created from the start balance
+        Map<UUID, BigDecimal> existing = selectChunk(conn, select.toString(), currencyId, chunk);
+
+        try (PreparedStatement ps = conn.prepareStatement(upsert.toString())) {
+            int param = 1;
+            for (Map.Entry<UUID, BigDecimal> entry : chunk) {
+                ps.setBytes(param++, toBytes(entry.getKey()));
+                ps.setString(param++, currencyId);
+                ps.setBigDecimal(param++, startBalance.add(entry.getValue()));
+            }
+            ps.setBigDecimal(param, startBalance);
+            ps.executeUpdate();
+        }
+
+        Map<UUID, BigDecimal> balances = selectChunk(conn, select.toString(), currencyId, chunk);
+        long added = balances.keySet().stream().filter(uuid -> !existing.containsKey(uuid)).count();
+        if (added > 0) created.merge(currencyId, startBalance.multiply(BigDecimal.valueOf(added)), BigDecimal::add);
+        return balances;
+    }
+
+    private Map<UUID, BigDecimal> selectChunk(Connection conn, String select, String currencyId, List<Map.Entry<UUID, BigDecimal>> chunk) throws SQLException {
+        Map<UUID, BigDecimal> balances = new HashMap<>();
+        try (PreparedStatement ps = conn.prepareStatement(select)) {
+            ps.setString(1, currencyId);
+            int param = 2;
+            for (Map.Entry<UUID, BigDecimal> entry : chunk) {
+                ps.setBytes(param++, toBytes(entry.getKey()));
+            }
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    balances.put(toUuid(rs.getBytes(1)), rs.getBigDecimal(2));
+                }
+            }
+        }
+        return balances;
+    }
+
+    /**
+     * Reads the highest balances of a currency, served by the (currency_id, amount) index.
+     * @return Balance per player, highest first.
+     */
+    @Override
+    public Map<UUID, BigDecimal> loadTop(String currencyId, int limit) {
+        long start = System.nanoTime();
+        String sql = "SELECT uuid, amount FROM " + tableName + " WHERE currency_id = ? ORDER BY amount DESC LIMIT ?";
+        Map<UUID, BigDecimal> top = new LinkedHashMap<>();
+
+        try (Connection conn = dataSource.getConnection();
+             PreparedStatement ps = conn.prepareStatement(sql)) {
+            ps.setString(1, currencyId);
+            ps.setInt(2, limit);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    top.put(toUuid(rs.getBytes(1)), rs.getBigDecimal(2));
+                }
+            }
+        } catch (SQLException e) {
+            host.getLogger().log(Level.SEVERE, "Failed to load top balances of " + currencyId, e);
+            throw new RuntimeException("Database error during leaderboard load", e);
+        } finally {
+            timed("db.loadTop", start);
+        }
+        return top;
+    }
+
+    /**
+     * Sets a balance stored in the database.
+     * @return The previously stored balance, or null if the player had no row for the currency.
+     * @throws RuntimeException if the database fails.
+     */
+    @Override
+    public BigDecimal setOffline(UUID uuid, String currencyId, BigDecimal amount) {
+        long start = System.nanoTime();
         String sql = """
-            INSERT INTO %s (uuid, currency_id, amount) 
-            VALUES (?, ?, ?) 
-            ON DUPLICATE KEY UPDATE amount = VALUES(amount)
+            INSERT INTO %s (uuid, currency_id, amount)
+            VALUES (?, ?, ?)
+            ON DUPLICATE KEY UPDATE amount = VALUES(amount), version = version + 1
         """.formatted(tableName);
 
+        try {
+            return inTransaction(conn -> {
+                BigDecimal previous = selectAmount(conn, uuid, currencyId);
+                try (PreparedStatement ps = conn.prepareStatement(sql)) {
+                    ps.setBytes(1, toBytes(uuid));
+                    ps.setString(2, currencyId);
+                    ps.setBigDecimal(3, amount);
+                    ps.executeUpdate();
+                }
+                return Optional.ofNullable(previous);
+            }).orElse(null);
+        } catch (SQLException e) {
+            host.getLogger().log(Level.SEVERE, "Failed offline set: " + uuid, e);
+            throw new RuntimeException("Database error during offline set", e);
+        } finally {
+            timed("db.setOffline", start);
+        }
+    }
+
+    /**
+     * Sums every stored balance per currency ID (the money supply), served by the (currency_id, amount) index.
+     */
+    @Override
+    public Map<String, BigDecimal> loadSupply() {
+        long start = System.nanoTime();
+        String sql = "SELECT currency_id, SUM(amount) FROM " + tableName + " GROUP BY currency_id";
+        Map<String, BigDecimal> supply = new HashMap<>();
+
+        try (Connection conn = dataSource.getConnection();
+             PreparedStatement ps = conn.prepareStatement(sql);
+             ResultSet rs = ps.executeQuery()) {
+            while (rs.next()) {
+                supply.put(rs.getString(1), rs.getBigDecimal(2));
+            }
+        } catch (SQLException e) {
+            host.getLogger().log(Level.SEVERE, "Failed to load the money supply", e);
+        } finally {
+            timed("db.loadSupply", start);
+        }
+        return supply;
+    }
+
+    /**
+     * Current saturation of the connection pool.
+     */
+    @Override
+    public Telemetry.PoolStats getPoolStats() {
+        HikariPoolMXBean pool = dataSource != null ? dataSource.getHikariPoolMXBean() : null;
+        if (pool == null) return Telemetry.PoolStats.EMPTY;
+        return new Telemetry.PoolStats(pool.getActiveConnections(), pool.getIdleConnections(),
+                pool.getTotalConnections(), pool.getThreadsAwaitingConnection());
+    }
+
+    private void timed(String query, long start) {
+        Telemetry telemetry = host.getTelemetry();
+        if (telemetry != null) telemetry.histogram(query).recordSince(start);
+    }
+
+    /**
+     * Runs the work in a transaction on its own connection.
+     * It is retried once if it collides with a concurrent first insert of the same row.
+     */
+    private <T> T inTransaction(TransactionWork<T> work) throws SQLException {
+        for (int attempt = 0; ; attempt++) {
+            try (Connection conn = dataSource.getConnection()) {
+                conn.setAutoCommit(false);
+                try {
+                    T result = work.run(conn);
+                    if (result != null) {
+                        conn.commit();
+                    } else {
+                        conn.rollback();
+                    }
+                    return result;
+                } catch (SQLException e) {
+                    conn.rollback();
+                    throw e;
+                } finally {
+                    conn.setAutoCommit(true);
+                }
+            } catch (SQLIntegrityConstraintViolationException e) {
+                if (attempt > 0) throw e;
+            }
+        }
+    }
+
+    /**
+     * Update first and insert only if there is no row, like {@link #withdrawOn}, so a row created from the
+     * start balance is known. A concurrent first insert makes the insert fail and {@link #inTransaction} retry.
+     * @param created Collects the start balances of created rows, per currency ID.
+     */
+    private BigDecimal depositOn(Connection conn, UUID uuid, String currencyId, BigDecimal amount, BigDecimal startBalance,
+                                 Map<String, BigDecimal> created) throws SQLException {
+        String update = "UPDATE " + tableName + " SET amount = amount + ?, version = version + 1 WHERE uuid = ? AND currency_id = ?";
+        try (PreparedStatement ps = conn.prepareStatement(update)) {
+            ps.setBigDecimal(1, amount);
+            ps.setBytes(2, toBytes(uuid));
+            ps.setString(3, currencyId);
+            if (ps.executeUpdate() == 1) {
+                // The row stays locked until commit, so this reads exactly our result
+                return selectAmount(conn, uuid, currencyId);
+            }
+        }
+
+        BigDecimal neo = startBalance.add(amount);
+        String insert = "INSERT INTO " + tableName + " (uuid, currency_id, amount) VALUES (?, ?, ?)";
+        try (PreparedStatement ps = conn.prepareStatement(insert)) {
+            ps.setBytes(1, toBytes(uuid));
+            ps.setString(2, currencyId);
+            ps.setBigDecimal(3, neo);
+            ps.executeUpdate();
+        }
+        created.merge(currencyId, startBalance, BigDecimal::add);
+        return neo;
+    }
+
+    private BigDecimal withdrawOn(Connection conn, UUID uuid, String currencyId, BigDecimal amount, BigDecimal startBalance,
+                                  Map<String, BigDecimal> created) throws SQLException {
+        String update = "UPDATE " + tableName + " SET amount = amount - ?, version = version + 1 WHERE uuid = ? AND currency_id = ? AND amount >= ?";
+        try (PreparedStatement ps = conn.prepareStatement(update)) {
+            ps.setBigDecimal(1, amount);
+            ps.setBytes(2, toBytes(uuid));
+            ps.setString(3, currencyId);
+            ps.setBigDecimal(4, amount);
+            if (ps.executeUpdate() == 1) {
+                return selectAmount(conn, uuid, currencyId);
+            }
+        }
+
+        // Nothing matched: either the balance is too low or the row doesn't exist yet
+        if (selectAmount(conn, uuid, currencyId) != null || startBalance.compareTo(amount) < 0) {
+            return null;
+        }
+        BigDecimal neo = startBalance.subtract(amount);
+        String insert = "INSERT INTO " + tableName + " (uuid, currency_id, amount) VALUES (?, ?, ?)";
+        try (PreparedStatement ps = conn.prepareStatement(insert)) {
+            ps.setBytes(1, toBytes(uuid));
+            ps.setString(2, currencyId);
+            ps.setBigDecimal(3, neo);
+            ps.executeUpdate();
+        }
+        created.merge(currencyId, startBalance, BigDecimal::add);
+        return neo;
+    }
+
+    private BigDecimal selectAmount(Connection conn, UUID uuid, String currencyId) throws SQLException {
+        String sql = "SELECT amount FROM " + tableName + " WHERE uuid = ? AND currency_id = ?";
+        try (PreparedStatement ps = conn.prepareStatement(sql)) {
+            ps.setBytes(1, toBytes(uuid));
+            ps.setString(2, currencyId);
+            try (ResultSet rs = ps.executeQuery()) {
+                return rs.next() ? rs.getBigDecimal(1) : null;
+            }
+        }
+    }
+
+    /**
+     * Keyset pagination over the primary key, so every page is an index range scan.
+     */
+    @Override
+    public void scan(int pageSize, Consumer<List<StoredBalance>> page) {
+        String sql = "SELECT uuid, currency_id, amount FROM " + tableName
+                + " WHERE uuid > ? OR (uuid = ? AND currency_id > ?) ORDER BY uuid, currency_id LIMIT ?";
+        byte[] lastUuid = new byte[0];
+        String lastCurrency = "";
+
         try (Connection conn = dataSource.getConnection();
              PreparedStatement ps = conn.prepareStatement(sql)) {
+            while (true) {
+                ps.setBytes(1, lastUuid);
+                ps.setBytes(2, lastUuid);
+                ps.setString(3, lastCurrency);
+                ps.setInt(4, pageSize);
+                List<StoredBalance> rows = new ArrayList<>(pageSize);
+                try (ResultSet rs = ps.executeQuery()) {
+                    while (rs.next()) {
+                        lastUuid = rs.getBytes(1);
+                        lastCurrency = rs.getString(2);
+                        rows.add(new StoredBalance(toUuid(lastUuid), lastCurrency, rs.getBigDecimal(3)));
+                    }
+                }
+                if (!rows.isEmpty()) page.accept(rows);
+                if (rows.size() < pageSize) return;
+            }
+        } catch (SQLException e) {
+            host.getLogger().log(Level.SEVERE, "Failed to scan balances", e);
+            throw new RuntimeException("Database error during scan", e);
+        }
+    }
 
-            // Batch update for performance
-            for (String currency : plugin.getAPI().getRegisteredCurrencies()) {
-                BigDecimal balance = account.getBalance(currency);
-                ps.setString(1, uuid.toString());
-                ps.setString(2, currency);
-                ps.setBigDecimal(3, balance);
-                ps.addBatch();
+    @Override
+    public void importBalances(List<StoredBalance> rows) {
+        if (rows.isEmpty()) return;
+        String sql = """
+            INSERT INTO %s (uuid, currency_id, amount)
+            VALUES (?, ?, ?)
+            ON DUPLICATE KEY UPDATE amount = VALUES(amount), version = version + 1
+        """.formatted(tableName);
+
+        try {
+            inTransaction(conn -> {
+                try (PreparedStatement ps = conn.prepareStatement(sql)) {
+                    for (StoredBalance row : rows) {
+                        ps.setBytes(1, toBytes(row.uuid()));
+                        ps.setString(2, row.currencyId());
+                        ps.setBigDecimal(3, row.amount());
+                        ps.addBatch();
+                    }
+                    ps.executeBatch();
+                }
+                return Boolean.TRUE;
+            });
+        } catch (SQLException e) {
+            host.getLogger().log(Level.SEVERE, "Failed to import " + rows.size() + " balances", e);
+            throw new RuntimeException("Database error during import", e);
+        }
+    }
+
+    @Override
+    public void loadNames(Consumer<StoredName> names) {
+        long start = System.nanoTime();
+        String sql = "SELECT uuid, name, updated_at FROM " + namesTable;
+        try (Connection conn = dataSource.getConnection();
+             PreparedStatement ps = conn.prepareStatement(sql)) {
+            ps.setFetchSize(NAME_FETCH_ROWS);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    names.accept(new StoredName(toUuid(rs.getBytes(1)), rs.getString(2), rs.getLong(3)));
+                }
+            }
+        } catch (SQLException e) {
+            host.getLogger().log(Level.SEVERE, "Failed to load player names", e);
+            throw new RuntimeException("Database error during name load", e);
+        } finally {
+            timed("db.loadNames", start);
+        }
+    }
+
+    @Override
+    public StoredName findName(String name) {
+        long start = System.nanoTime();
+        // A name can be held by several UUIDs over time, the latest holder wins
+        String sql = "SELECT uuid, name, updated_at FROM " + namesTable + " WHERE name_lower = ? ORDER BY updated_at DESC LIMIT 1";
+        try (Connection conn = dataSource.getConnection();
+             PreparedStatement ps = conn.prepareStatement(sql)) {
+            ps.setString(1, name.toLowerCase(Locale.ROOT));
+            try (ResultSet rs = ps.executeQuery()) {
+                return rs.next() ? new StoredName(toUuid(rs.getBytes(1)), rs.getString(2), rs.getLong(3)) : null;
             }
+        } catch (SQLException e) {
+            host.getLogger().log(Level.SEVERE, "Failed to look up player " + name, e);
+            throw new RuntimeException("Database error during name lookup", e);
+        } finally {
+            timed("db.findName", start);
+        }
+    }
 
+    @Override
+    public void saveNames(Collection<StoredName> names) {
+        if (names.isEmpty()) return;
+        long start = System.nanoTime();
+        String sql = """
+            INSERT INTO %s (uuid, name, name_lower, updated_at)
+            VALUES (?, ?, ?, ?)
+            ON DUPLICATE KEY UPDATE name = VALUES(name), name_lower = VALUES(name_lower), updated_at = VALUES(updated_at)
+        """.formatted(namesTable);
+        try (Connection conn = dataSource.getConnection();
+             PreparedStatement ps = conn.prepareStatement(sql)) {
+            for (StoredName name : names) {
+                ps.setBytes(1, toBytes(name.uuid()));
+                ps.setString(2, name.name());
+                ps.setString(3, name.name().toLowerCase(Locale.ROOT));
+                ps.setLong(4, name.updatedAt());
+                ps.addBatch();
+            }
             ps.executeBatch();
-            account.setClean();
+        } catch (SQLException e) {
+            host.getLogger().log(Level.SEVERE, "Failed to save " + names.size() + " player names", e);
+        } finally {
+            timed("db.saveNames", start);
+        }
+    }
+
+    @Override
+    public void insertHistory(List<TransactionRecord> records) {
+        if (records.isEmpty()) return;
+        long start = System.nanoTime();
+        String sql = "INSERT INTO " + historyTable
+                + " (created_at, uuid, counterparty, currency_id, type, amount, balance) VALUES (?, ?, ?, ?, ?, ?, ?)";
+        try {
+            // One commit for the whole batch
+            inTransaction(conn -> {
+                try (PreparedStatement ps = conn.prepareStatement(sql)) {
+                    for (TransactionRecord record : records) {
+                        ps.setLong(1, record.time());
+                        ps.setBytes(2, toBytes(record.player()));
+                        ps.setBytes(3, record.counterparty() != null ? toBytes(record.counterparty()) : null);
+                        ps.setString(4, record.currencyId());
+                        ps.setString(5, record.type().name());
+                        ps.setBigDecimal(6, record.amount());
+                        ps.setBigDecimal(7, record.balance());
+                        ps.addBatch();
+                    }
+                    ps.executeBatch();
+                }
+                return Boolean.TRUE;
+            });
+        } catch (SQLException e) {
+            throw new RuntimeException("Database error during history insert", e);
+        } finally {
+            timed("db.insertHistory", start);
+        }
+    }
+
+    @Override
+    public void scanHistory(int pageSize, Consumer<List<TransactionRecord>> page) {
+        String sql = "SELECT id, created_at, uuid, counterparty, currency_id, type, amount, balance FROM " + historyTable
+                + " WHERE id > ? ORDER BY id LIMIT ?";
+        long lastId = 0L;
 
-            if (plugin.isLoggingEnabled()) {
-                plugin.getLogger().info("Data saved for: " + uuid);
+        try (Connection conn = dataSource.getConnection();
+             PreparedStatement ps = conn.prepareStatement(sql)) {
+            while (true) {
+                ps.setLong(1, lastId);
+                ps.setInt(2, pageSize);
+                List<TransactionRecord> records = new ArrayList<>(pageSize);
+                try (ResultSet rs = ps.executeQuery()) {
+                    while (rs.next()) {
+                        lastId = rs.getLong(1);
+                        byte[] counterparty = rs.getBytes(4);
+                        records.add(new TransactionRecord(lastId, rs.getLong(2), toUuid(rs.getBytes(3)),
+                                counterparty != null ? toUuid(counterparty) : null, rs.getString(5),
+                                TransactionRecord.Type.valueOf(rs.getString(6)), rs.getBigDecimal(7), rs.getBigDecimal(8)));
+                    }
+                }
+                if (!records.isEmpty()) page.accept(records);
+                if (records.size() < pageSize) return;
             }
+        } catch (SQLException e) {
+            host.getLogger().log(Level.SEVERE, "Failed to scan the history", e);
+            throw new RuntimeException("Database error during history scan", e);
+        }
+    }
+
+    @Override
+    public void importHistory(List<TransactionRecord> records) {
+        if (records.isEmpty()) return;
+        String sql = """
+            INSERT INTO %s (id, created_at, uuid, counterparty, currency_id, type, amount, balance)
+            VALUES (?, ?, ?, ?, ?, ?, ?, ?)
+            ON DUPLICATE KEY UPDATE uuid = VALUES(uuid), counterparty = VALUES(counterparty), currency_id = VALUES(currency_id),
+                type = VALUES(type), amount = VALUES(amount), balance = VALUES(balance)
+        """.formatted(historyTable);
+
+        try {
+            inTransaction(conn -> {
+                try (PreparedStatement ps = conn.prepareStatement(sql)) {
+                    for (TransactionRecord record : records) {
+                        ps.setLong(1, record.id());
+                        ps.setLong(2, record.time());
+                        ps.setBytes(3, toBytes(record.player()));
+                        ps.setBytes(4, record.counterparty() != null ? toBytes(record.counterparty()) : null);
+                        ps.setString(5, record.currencyId());
+                        ps.setString(6, record.type().name());
+                        ps.setBigDecimal(7, record.amount());
+                        ps.setBigDecimal(8, record.balance());
+                        ps.addBatch();
+                    }
+                    ps.executeBatch();
+                }
+                return Boolean.TRUE;
+            });
+        } catch (SQLException e) {
+            host.getLogger().log(Level.SEVERE, "Failed to import " + records.size() + " history records", e);
+            throw new RuntimeException("Database error during history import", e);
+        }
+    }
+
+    /**
+     * Newest first. Seeks the (uuid, id) or (uuid, currency_id, id) index, so every page costs the same.
+     */
+    @Override
+    public List<TransactionRecord> loadHistory(UUID uuid, String currencyId, long beforeId, int limit) {
+        long start = System.nanoTime();
+        String sql = "SELECT id, created_at, counterparty, currency_id, type, amount, balance FROM " + historyTable
+                + " WHERE uuid = ?" + (currencyId != null ? " AND currency_id = ?" : "")
+                + " AND id < ? ORDER BY id DESC LIMIT ?";
+        List<TransactionRecord> records = new ArrayList<>();
 
+        try (Connection conn = dataSource.getConnection();
+             PreparedStatement ps = conn.prepareStatement(sql)) {
+            int param = 1;
+            ps.setBytes(param++, toBytes(uuid));
+            if (currencyId != null) ps.setString(param++, currencyId);
+            ps.setLong(param++, beforeId);
+            ps.setInt(param, limit);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    byte[] counterparty = rs.getBytes(3);
+                    records.add(new TransactionRecord(rs.getLong(1), rs.getLong(2), uuid,
+                            counterparty != null ? toUuid(counterparty) : null, rs.getString(4),
+                            TransactionRecord.Type.valueOf(rs.getString(5)), rs.getBigDecimal(6), rs.getBigDecimal(7)));
+                }
+            }
         } catch (SQLException e) {
-            plugin.getLogger().log(Level.SEVERE, "CRITICAL ERROR SAVING: " + uuid, e);
+            host.getLogger().log(Level.SEVERE, "Failed to load the history of " + uuid, e);
+            throw new RuntimeException("Database error during history load", e);
+        } finally {
+            timed("db.loadHistory", start);
+        }
+        return records;
+    }
+
+    /**
+     * On MariaDB/MySQL the table is partitioned by month (UTC): this adds the partitions for this and
+     * next month and drops the ones that end before retainFrom, which is instant and leaves no fragmentation.
+     * H2 has no partitions and deletes the rows instead.
+     */
+    @Override
+    public void maintainHistory(long retainFrom) {
+        long start = System.nanoTime();
+        try (Connection conn = dataSource.getConnection()) {
+            if (h2) {
+                if (retainFrom <= 0) return;
+                try (PreparedStatement ps = conn.prepareStatement("DELETE FROM " + historyTable + " WHERE created_at < ?")) {
+                    ps.setLong(1, retainFrom);
+                    int deleted = ps.executeUpdate();
+                    if (deleted > 0 && host.isLoggingEnabled()) host.getLogger().info("Deleted " + deleted + " expired history rows.");
+                }
+                return;
+            }
+
+            // Only one server of a network changes the partitions at a time; the others skip this round
+            try (PreparedStatement ps = conn.prepareStatement("SELECT GET_LOCK(?, 0)")) {
+                ps.setString(1, HISTORY_LOCK);
+                try (ResultSet rs = ps.executeQuery()) {
+                    if (!rs.next() || rs.getInt(1) != 1) return;
+                }
+            }
+            try {
+                maintainPartitions(conn, retainFrom);
+            } finally {
+                try (PreparedStatement ps = conn.prepareStatement("SELECT RELEASE_LOCK(?)")) {
+                    ps.setString(1, HISTORY_LOCK);
+                    ps.execute();
+                }
+            }
+        } catch (SQLException e) {
+            host.getLogger().log(Level.WARNING, "Failed to maintain the history partitions", e);
+        } finally {
+            timed("db.maintainHistory", start);
+        }
+    }
+
+    private void maintainPartitions(Connection conn, long retainFrom) throws SQLException {
+        // Partition name -> exclusive upper bound in epoch millis
+        Map<String, Long> partitions = new LinkedHashMap<>();
+        String sql = "SELECT PARTITION_NAME, PARTITION_DESCRIPTION FROM information_schema.PARTITIONS"
+                + " WHERE TABLE_SCHEMA = DATABASE() AND TABLE_NAME = ? ORDER BY PARTITION_ORDINAL_POSITION";
+        try (PreparedStatement ps = conn.prepareStatement(sql)) {
+            ps.setString(1, historyTable);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    String name = rs.getString(1);
+                    if (name == null) {
+                        host.getLogger().warning("The " + historyTable + " table is not partitioned, history retention is skipped.");
+                        return;
+                    }
+                    if (!name.equals(HISTORY_OVERFLOW_PARTITION)) partitions.put(name, Long.parseLong(rs.getString(2)));
+                }
+            }
+        }
+
+        long highest = partitions.values().stream().mapToLong(Long::longValue).max().orElse(Long.MIN_VALUE);
+        YearMonth month = YearMonth.now(ZoneOffset.UTC);
+        for (int i = 0; i < 2; i++, month = month.plusMonths(1)) {
+            long end = month.plusMonths(1).atDay(1).atStartOfDay(ZoneOffset.UTC).toInstant().toEpochMilli();
+            if (end <= highest) continue;
+            String name = "p" + month.format(PARTITION_MONTH);
+            execute(conn, "ALTER TABLE " + historyTable + " REORGANIZE PARTITION " + HISTORY_OVERFLOW_PARTITION + " INTO ("
+                    + "PARTITION " + name + " VALUES LESS THAN (" + end + "), "
+                    + "PARTITION " + HISTORY_OVERFLOW_PARTITION + " VALUES LESS THAN MAXVALUE)");
+            highest = end;
+            host.getLogger().info("Added history partition " + name + ".");
+        }
+
+        if (retainFrom <= 0) return;
+        for (Map.Entry<String, Long> partition : partitions.entrySet()) {
+            if (partition.getValue() > retainFrom) continue;
+            execute(conn, "ALTER TABLE " + historyTable + " DROP PARTITION " + partition.getKey());
+            host.getLogger().info("Dropped expired history partition " + partition.getKey() + ".");
         }
     }
 
+    @Override
     public void wipeUser(UUID uuid) {
+        long start = System.nanoTime();
         String sql = "DELETE FROM " + tableName + " WHERE uuid = ?";
         try (Connection conn = dataSource.getConnection();
              PreparedStatement ps = conn.prepareStatement(sql)) {
-            ps.setString(1, uuid.toString());
+            ps.setBytes(1, toBytes(uuid));
             ps.executeUpdate();
         } catch (SQLException e) {
-            plugin.getLogger().log(Level.SEVERE, "Error wiping user: " + uuid, e);
+            host.getLogger().log(Level.SEVERE, "Error wiping user: " + uuid, e);
+        } finally {
+            timed("db.wipeUser", start);
         }
     }
 }
\ No newline at end of file
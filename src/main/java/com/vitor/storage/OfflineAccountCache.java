@@ -0,0 +1,85 @@
+package com.vitor.storage;
+
+import com.vitor.model.UserAccount;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Size-bounded, TTL-based cache of offline player accounts.
+ * Lets repeated lookups (scoreboards, /money, leaderboards) skip the database.
+ * <p>
+ * Entries are read-only snapshots: mutations go to the database and then invalidate the entry,
+ * so the next read loads the stored balance again.
+ */
+public class OfflineAccountCache {
+
+    private record Entry(UserAccount account, long expiresAt) {}
+
+    private final Map<UUID, Entry> entries = new ConcurrentHashMap<>();
+    private final int maxSize;
+    private final long ttlNanos;
+
+    public OfflineAccountCache(int maxSize, long ttlSeconds) {
+        this.maxSize = Math.max(0, maxSize);
+        this.ttlNanos = TimeUnit.SECONDS.toNanos(Math.max(0, ttlSeconds));
+    }
+
+    /**
+     * @return The cached account, or null if absent or expired.
+     */
+    public UserAccount get(UUID uuid) {
+        Entry entry = entries.get(uuid);
+        if (entry == null) return null;
+        if (entry.expiresAt - System.nanoTime() < 0) {
+            entries.remove(uuid, entry);
+            return null;
+        }
+        return entry.account;
+    }
+
+    public void put(UUID uuid, UserAccount account) {
+        if (maxSize == 0) return;
+        entries.put(uuid, new Entry(account, System.nanoTime() + ttlNanos));
+        if (entries.size() > maxSize) evict();
+    }
+
+    public void invalidate(UUID uuid) {
+        entries.remove(uuid);
+    }
+
+    /**
+     * Drops the entry only if it still holds the given account.
+     */
+    public void invalidate(UUID uuid, UserAccount account) {
+        entries.computeIfPresent(uuid, (key, entry) -> entry.account == account ? null : entry);
+    }
+
+    public void clear() {
+        entries.clear();
+    }
+
+    /**
+     * Drops expired entries, then the ones closest to expiring until the cache is
+     * back to 90% of its size, so eviction is amortized over many inserts.
+     */
+    private synchronized void evict() {
+        if (entries.size() <= maxSize) return;
+
+        long now = System.nanoTime();
+        entries.values().removeIf(entry -> entry.expiresAt - now < 0);
+
+        int excess = entries.size() - (maxSize * 9 / 10);
+        if (excess <= 0) return;
+
+        List<Map.Entry<UUID, Entry>> oldest = new ArrayList<>(entries.entrySet());
+        oldest.sort((a, b) -> Long.compare(a.getValue().expiresAt - now, b.getValue().expiresAt - now));
+        for (int i = 0; i < excess && i < oldest.size(); i++) {
+            entries.remove(oldest.get(i).getKey(), oldest.get(i).getValue());
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package com.vitor.storage;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * vEconomy's own name <-> UUID index, so commands never go through Bukkit.getOfflinePlayer(name).
+ * Filled on login and persisted in the player_names table; the whole index is kept in memory.
+ * <p>
+ * Names are matched case-insensitively. A name can move to another player after a rename,
+ * then the most recently recorded holder wins.
+ */
+public class PlayerNameIndex {
+
+    private final StorageBackend storage;
+    private final Map<String, StorageBackend.StoredName> byName = new ConcurrentHashMap<>();
+    private final Map<UUID, StorageBackend.StoredName> byUuid = new ConcurrentHashMap<>();
+    // Same entries as byName, sorted for prefix lookups
+    private final NavigableMap<String, StorageBackend.StoredName> sorted = new ConcurrentSkipListMap<>();
+
+    public PlayerNameIndex(StorageBackend storage) {
+        this.storage = storage;
+    }
+
+    /**
+     * Reads the persisted index.
+     * @throws RuntimeException if the store fails.
+     */
+    public void load() {
+        storage.loadNames(this::put);
+    }
+
+    public int size() {
+        return byUuid.size();
+    }
+
+    /**
+     * Records the name a player logged in with. Only writes to the store if it changed.
+     */
+    public void record(UUID uuid, String name) {
+        StorageBackend.StoredName known = byUuid.get(uuid);
+        if (known != null && known.name().equals(name)) return;
+        StorageBackend.StoredName entry = new StorageBackend.StoredName(uuid, name, System.currentTimeMillis());
+        put(entry);
+        storage.saveNames(List.of(entry));
+    }
+
+    /**
+     * Adds players known from elsewhere (e.g. the server's player data) without replacing recorded names.
+     */
+    public void seed(Collection<StorageBackend.StoredName> names) {
+        List<StorageBackend.StoredName> added = new ArrayList<>();
+        for (StorageBackend.StoredName name : names) {
+            if (byUuid.containsKey(name.uuid())) continue;
+            put(name);
+            added.add(name);
+        }
+        storage.saveNames(added);
+    }
+
+    /**
+     * @return The player who last used the name, or null if unknown. Names missing in memory
+     * (e.g. recorded by another server of the network) are looked up in the store, which blocks.
+     */
+    public StorageBackend.StoredName resolve(String name) {
+        StorageBackend.StoredName entry = byName.get(name.toLowerCase(Locale.ROOT));
+        if (entry != null) return entry;
+        entry = storage.findName(name);
+        if (entry != null) put(entry);
+        return entry;
+    }
+
+    /**
+     * @return The last known name of the player, or null. Never blocks.
+     */
+    public String getName(UUID uuid) {
+        StorageBackend.StoredName entry = byUuid.get(uuid);
+        return entry != null ? entry.name() : null;
+    }
+
+    /**
+     * @return Up to limit known names starting with the prefix, case-insensitive, in alphabetical order.
+     */
+    public List<String> complete(String prefix, int limit) {
+        String from = prefix.toLowerCase(Locale.ROOT);
+        List<String> names = new ArrayList<>(Math.min(limit, 16));
+        for (StorageBackend.StoredName entry : sorted.tailMap(from).values()) {
+            if (names.size() >= limit || !entry.name().toLowerCase(Locale.ROOT).startsWith(from)) break;
+            names.add(entry.name());
+        }
+        return names;
+    }
+
+    // Writes are rare (logins with a new name), so they are simply serialized
+    private synchronized void put(StorageBackend.StoredName entry) {
+        StorageBackend.StoredName previous = byUuid.get(entry.uuid());
+        if (previous != null && previous.updatedAt() > entry.updatedAt()) return;
+        byUuid.put(entry.uuid(), entry);
+
+        // The player's old name no longer points to them
+        if (previous != null) {
+            String oldKey = previous.name().toLowerCase(Locale.ROOT);
+            if (byName.remove(oldKey, previous)) sorted.remove(oldKey, previous);
+        }
+
+        String key = entry.name().toLowerCase(Locale.ROOT);
+        StorageBackend.StoredName holder = byName.get(key);
+        if (holder == null || holder.updatedAt() <= entry.updatedAt()) {
+            byName.put(key, entry);
+            sorted.put(key, entry);
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package com.vitor.storage;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Bounded lock-free queue for many producers and a single consumer.
+ * Producers claim a sequence number on tail, then publish into its slot; the consumer clears
+ * a slot before moving head past it, which frees it for reuse. Offering never blocks.
+ */
+public class RingBuffer<T> {
+
+    private final AtomicReferenceArray<T> slots;
+    private final int mask;
+    private final AtomicLong tail = new AtomicLong();
+    private final AtomicLong head = new AtomicLong();
+
+    /**
+     * @param capacity Rounded up to a power of two.
+     */
+    public RingBuffer(int capacity) {
+        int size = Integer.highestOneBit(Math.max(2, Math.min(1 << 24, capacity)) * 2 - 1);
+        this.slots = new AtomicReferenceArray<>(size);
+        this.mask = size - 1;
+    }
+
+    public int capacity() {
+        return slots.length();
+    }
+
+    /**
+     * @return false if the buffer is full; the item is not queued.
+     */
+    public boolean offer(T item) {
+        long sequence;
+        do {
+            sequence = tail.get();
+            if (sequence - head.get() >= slots.length()) return false;
+        } while (!tail.compareAndSet(sequence, sequence + 1));
+        slots.setRelease((int) sequence & mask, item);
+        return true;
+    }
+
+    /**
+     * Consumer thread only.
+     * @return The oldest published item, or null if there is none (an item still being published counts as none).
+     */
+    public T poll() {
+        long next = head.get();
+        int slot = (int) next & mask;
+        T item = slots.getAcquire(slot);
+        if (item == null) return null;
+        slots.setPlain(slot, null);
+        head.setRelease(next + 1);
+        return item;
+    }
+}
@@ -0,0 +1,201 @@
+package com.vitor.storage;
+
+import com.vitor.api.TransactionRecord;
+import com.vitor.metrics.Telemetry;
+import com.vitor.model.UserAccount;
+
+import java.math.BigDecimal;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.function.Consumer;
+import java.util.logging.Logger;
+
+/**
+ * Where balances are persisted. Online accounts are loaded and saved in bulk,
+ * offline balances are changed atomically in place (no load -> modify -> save).
+ * <p>
+ * Offline mutations throw a RuntimeException when the store fails, and then nothing is applied.
+ */
+public interface StorageBackend {
+
+    /**
+     * What a backend needs from its owner; the plugin in production, a stub in benchmarks.
+     */
+    interface Host {
+        Logger getLogger();
+        UserAccount newAccount();
+        boolean isLoggingEnabled();
+        TransactionJournal getJournal();
+        Telemetry getTelemetry();
+
+        /**
+         * A save found that another server changed the balance and applied that change to the account.
+         * @param delta What the other server changed.
+         */
+        void onRemoteChange(UUID uuid, UserAccount account, int currency, BigDecimal delta);
+
+        /**
+         * Rows were created from start balances, which are part of the stored money supply from now on.
+         * Only called once the rows are committed.
+         * @param startBalances Sum of the start balances of the new rows.
+         */
+        void onRowsCreated(String currencyId, BigDecimal startBalances);
+    }
+
+    /**
+     * One balance change applied directly to the store. A negative delta is a withdrawal
+     * and only succeeds if the stored balance covers it.
+     */
+    record OfflineChange(UUID uuid, String currencyId, BigDecimal delta, BigDecimal startBalance) {}
+
+    /**
+     * A stored row, as read by {@link #scan} and written by {@link #importBalances}.
+     */
+    record StoredBalance(UUID uuid, String currencyId, BigDecimal amount) {}
+
+    /**
+     * The name a player was last seen with; updatedAt is when that name was first recorded, in epoch millis.
+     */
+    record StoredName(UUID uuid, String name, long updatedAt) {}
+
+    /**
+     * Loads an account; currencies without a stored row keep the default balance.
+     */
+    UserAccount loadAccount(UUID uuid, BigDecimal[] defaultBalances);
+
+    /**
+     * Loads several accounts at once, e.g. a burst of logins.
+     * @return An account for every requested player.
+     * @throws RuntimeException if the store fails.
+     */
+    Map<UUID, UserAccount> loadAccounts(Collection<UUID> uuids, BigDecimal[] defaultBalances);
+
+    /**
+     * Saves the currencies that changed since the last save.
+     */
+    void saveAccount(UUID uuid, UserAccount account);
+
+    /**
+     * Saves every dirty account of the map.
+     *
+     * @param waitForLocks If false, accounts being saved by another thread are skipped and stay dirty.
+     */
+    void saveAccounts(Map<UUID, UserAccount> accounts, boolean waitForLocks);
+
+    /**
+     * @return The new balance.
+     */
+    BigDecimal depositOffline(UUID uuid, String currencyId, BigDecimal amount, BigDecimal startBalance);
+
+    /**
+     * @return The new balance, or null if funds are insufficient (nothing is applied).
+     */
+    BigDecimal withdrawOffline(UUID uuid, String currencyId, BigDecimal amount, BigDecimal startBalance);
+
+    /**
+     * Applies all changes or none.
+     *
+     * @return The balance after each change, in the given order, or null if a withdrawal was not covered.
+     */
+    List<BigDecimal> applyOffline(List<OfflineChange> changes);
+
+    /**
+     * @return New balance per player. Players whose deposit failed are absent.
+     */
+    Map<UUID, BigDecimal> depositAllOffline(String currencyId, Map<UUID, BigDecimal> amounts, BigDecimal startBalance);
+
+    /**
+     * Adds a change without a funds check, like a save merging into a row another server changed.
+     * A missing row starts from the start balance.
+     *
+     * @return The new balance.
+     */
+    BigDecimal mergeOffline(UUID uuid, String currencyId, BigDecimal delta, BigDecimal startBalance);
+
+    /**
+     * @return The previously stored balance, or null if the player had no row for the currency.
+     */
+    BigDecimal setOffline(UUID uuid, String currencyId, BigDecimal amount);
+
+    /**
+     * @return Balance per player, highest first.
+     */
+    Map<UUID, BigDecimal> loadTop(String currencyId, int limit);
+
+    /**
+     * Sums every stored balance per currency ID.
+     */
+    Map<String, BigDecimal> loadSupply();
+
+    void wipeUser(UUID uuid);
+
+    /**
+     * Reads every stored row in pages of at most pageSize rows, in a stable order.
+     * Used to copy data between backends.
+     */
+    void scan(int pageSize, Consumer<List<StoredBalance>> page);
+
+    /**
+     * Writes rows as they are, replacing stored ones. All rows are written or none.
+     */
+    void importBalances(List<StoredBalance> rows);
+
+    /**
+     * Reads the whole name index.
+     * @throws RuntimeException if the store fails.
+     */
+    void loadNames(Consumer<StoredName> names);
+
+    /**
+     * Case-insensitive lookup of the player who most recently used the name.
+     * @return The entry, or null if nobody was recorded with it.
+     * @throws RuntimeException if the store fails.
+     */
+    StoredName findName(String name);
+
+    /**
+     * Inserts or replaces the names of the given players.
+     */
+    void saveNames(Collection<StoredName> names);
+
+    /**
+     * Appends history records in one transaction; their ids are assigned by the store.
+     * @throws RuntimeException if the store fails, then nothing is written.
+     */
+    void insertHistory(List<TransactionRecord> records);
+
+    /**
+     * A page of a player's history, newest first.
+     *
+     * @param currencyId Only this currency, or null for all.
+     * @param beforeId Only records with a smaller id; Long.MAX_VALUE for the first page.
+     * @throws RuntimeException if the store fails.
+     */
+    List<TransactionRecord> loadHistory(UUID uuid, String currencyId, long beforeId, int limit);
+
+    /**
+     * Reads the whole history in pages of at most pageSize records, oldest first.
+     * Used to copy data between backends.
+     * @throws RuntimeException if the store fails.
+     */
+    void scanHistory(int pageSize, Consumer<List<TransactionRecord>> page);
+
+    /**
+     * Writes history records with the ids they have, replacing stored ones with the same id.
+     * All records are written or none.
+     * @throws RuntimeException if the store fails.
+     */
+    void importHistory(List<TransactionRecord> records);
+
+    /**
+     * Prepares the history for upcoming records and removes the ones older than retainFrom
+     * (epoch millis, 0 keeps everything). Failures are logged.
+     */
+    void maintainHistory(long retainFrom);
+
+    Telemetry.PoolStats getPoolStats();
+
+    void close();
+}
@@ -0,0 +1,142 @@
+package com.vitor.storage;
+
+import com.vitor.api.TransactionRecord;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Persists every balance change into the transactions table for /veco history and the API.
+ * <p>
+ * Recording only queues the row in a lock-free ring buffer. A background thread inserts the queue
+ * in batches every flush interval, so the transaction path never waits for the database. If the
+ * database is down or the buffer is full, rows are dropped and counted (the transaction log still has them).
+ */
+public class TransactionHistory {
+
+    private static final int INSERT_BATCH_ROWS = 1000;
+    private static final long MAINTENANCE_INTERVAL_HOURS = 6L;
+
+    private final StorageBackend storage;
+    private final RingBuffer<TransactionRecord> buffer;
+    private final long retentionMillis;
+    private final Logger logger;
+    private final AtomicLong dropped = new AtomicLong();
+    private final ScheduledExecutorService thread = Executors.newSingleThreadScheduledExecutor(
+            Thread.ofPlatform().name("vEconomy-history").daemon().factory());
+
+    // History thread only
+    private boolean failing;
+
+    /**
+     * @param retentionDays Rows older than this are deleted, 0 keeps everything.
+     */
+    public TransactionHistory(StorageBackend storage, int bufferSize, long retentionDays, Logger logger) {
+        this.storage = storage;
+        this.buffer = new RingBuffer<>(Math.max(1024, bufferSize));
+        this.retentionMillis = TimeUnit.DAYS.toMillis(Math.max(0L, retentionDays));
+        this.logger = logger;
+    }
+
+    /**
+     * Starts the insert and retention tasks.
+     */
+    public void start(long flushIntervalMillis) {
+        long interval = Math.max(10L, flushIntervalMillis);
+        thread.scheduleWithFixedDelay(this::flush, interval, interval, TimeUnit.MILLISECONDS);
+        thread.scheduleWithFixedDelay(this::maintain, 0L, MAINTENANCE_INTERVAL_HOURS, TimeUnit.HOURS);
+    }
+
+    /**
+     * Inserts what is still queued and stops the background thread.
+     */
+    public void close() {
+        thread.shutdown();
+        try {
+            // The queue has a single consumer, so only flush here once the thread is gone
+            if (thread.awaitTermination(10, TimeUnit.SECONDS)) {
+                flush();
+            } else {
+                logger.warning("The transaction history did not stop in time, queued rows are lost.");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Inserts what is queued right now, on the history thread, and waits for it.
+     */
+    public void sync() {
+        try {
+            thread.submit(this::flush).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException | RejectedExecutionException e) {
+            logger.log(Level.WARNING, "Could not insert the queued history rows", e);
+        }
+    }
+
+    /**
+     * Queues a row. Never blocks.
+     *
+     * @param counterparty The other player of a transfer, or null.
+     * @param balance The player's balance afterwards, or null if not known.
+     */
+    public void record(TransactionRecord.Type type, UUID player, UUID counterparty, String currencyId, BigDecimal amount, BigDecimal balance) {
+        TransactionRecord record = new TransactionRecord(0L, System.currentTimeMillis(), player, counterparty, currencyId, type, amount, balance);
+        if (!buffer.offer(record)) dropped.incrementAndGet();
+    }
+
+    /**
+     * A page of a player's history, newest first. Blocks on the database; rows recorded
+     * within the last flush interval may not be visible yet.
+     * @see StorageBackend#loadHistory
+     */
+    public List<TransactionRecord> query(UUID player, String currencyId, long beforeId, int limit) {
+        return storage.loadHistory(player, currencyId, beforeId, limit);
+    }
+
+    public long getDropped() {
+        return dropped.get();
+    }
+
+    private void flush() {
+        List<TransactionRecord> batch = new ArrayList<>();
+        TransactionRecord record;
+        do {
+            record = buffer.poll();
+            if (record != null) batch.add(record);
+            if (batch.size() < INSERT_BATCH_ROWS && record != null) continue;
+            if (batch.isEmpty()) return;
+            try {
+                storage.insertHistory(batch);
+                failing = false;
+            } catch (RuntimeException e) {
+                // Keep draining, or the buffer fills up and every new row is dropped
+                dropped.addAndGet(batch.size());
+                if (!failing) logger.log(Level.WARNING, "Could not write the transaction history, rows are dropped until it recovers", e);
+                failing = true;
+            }
+            batch.clear();
+        } while (record != null);
+    }
+
+    private void maintain() {
+        try {
+            storage.maintainHistory(retentionMillis > 0 ? System.currentTimeMillis() - retentionMillis : 0L);
+        } catch (RuntimeException e) {
+            logger.log(Level.WARNING, "Could not apply the transaction history retention", e);
+        }
+    }
+}
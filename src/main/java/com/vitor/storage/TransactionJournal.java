@@ -0,0 +1,545 @@
+package com.vitor.storage;
+
+import com.vitor.model.CurrencyRegistry;
+import com.vitor.model.UserAccount;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.CRC32C;
+
+/**
+ * Append-only, memory-mapped write-ahead journal of in-memory balance changes.
+ * Closes the gap between a transaction and the next auto-save: after a JVM crash the
+ * balances that never reached the database are replayed from here on startup.
+ * <p>
+ * Records are fixed-size slots, so writers only reserve a slot with one atomic increment and
+ * copy into the mapping; no syscall happens on the transaction path. A background thread
+ * forces dirty pages to disk every {@code syncIntervalMillis} (group commit).
+ * <p>
+ * Each record holds the absolute balance together with the account instance and the version
+ * it includes (read before the balance, like {@link UserAccount#collectDirty()}). Loads and saves
+ * append a marker with the version they persisted and the balance the database held then, so
+ * replay only restores balances newer than the database, no matter how records from concurrent
+ * writers are interleaved, and as a change on top of that balance rather than an overwrite.
+ */
+public class TransactionJournal {
+
+    private static final int RECORD_SIZE = 128;
+    private static final int HEADER_SIZE = 40;
+    private static final int MAX_CURRENCY_BYTES = 48;
+    private static final int MAX_UNSCALED_BYTES = RECORD_SIZE - HEADER_SIZE - MAX_CURRENCY_BYTES;
+
+    private static final byte TYPE_BALANCE = 1;
+    private static final byte TYPE_SAVED = 2;
+
+    private static final String SEGMENT_PREFIX = "segment-";
+    private static final String SEGMENT_SUFFIX = ".wal";
+
+    private record Scratch(ByteBuffer buffer, CRC32C crc) {}
+
+    private static final ThreadLocal<Scratch> SCRATCH = ThreadLocal.withInitial(
+            () -> new Scratch(ByteBuffer.allocate(RECORD_SIZE), new CRC32C()));
+
+    private static final class Segment {
+        final long id;
+        final File file;
+        final FileChannel channel;
+        final MappedByteBuffer buffer;
+        final int capacity;
+        final AtomicInteger next = new AtomicInteger();
+        // Left by a previous run: every slot is final, empty or torn ones included
+        final boolean sealed;
+        // Slots already folded into the truncation state, guarded by truncation
+        int scanned;
+
+        // Only a new file gets newBytes: an existing one is mapped as it is, since resizing it to a
+        // changed segment size would cut off records that were not replayed yet
+        Segment(long id, File file, int newBytes, boolean sealed) throws IOException {
+            this.id = id;
+            this.file = file;
+            this.sealed = sealed;
+            try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+                long length = raf.length();
+                if (length == 0) {
+                    raf.setLength(newBytes);
+                    length = newBytes;
+                }
+                int bytes = (int) (Math.min(length, Integer.MAX_VALUE) / RECORD_SIZE * RECORD_SIZE);
+                this.channel = raf.getChannel();
+                this.buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, bytes);
+                this.capacity = bytes / RECORD_SIZE;
+            }
+        }
+
+        void close() {
+            try {
+                buffer.force();
+                channel.close();
+            } catch (IOException ignored) {
+                // Already synced or gone; nothing left to protect
+            }
+        }
+    }
+
+    private record Key(UUID uuid, String currency) {}
+
+    private record Entry(long instance, long version, BigDecimal balance) {}
+
+    /**
+     * A balance that never reached the database.
+     *
+     * @param stored What the database held when the account last loaded or saved it; the journaled
+     *               change is the difference. Null for journals written before markers held it.
+     */
+    public record Unsaved(BigDecimal balance, BigDecimal stored) {}
+
+    private final File directory;
+    private final int segmentBytes;
+    private final long syncIntervalMillis;
+    private final Logger logger;
+
+    // Oldest first; the last one is where records are appended
+    private final ConcurrentLinkedDeque<Segment> segments = new ConcurrentLinkedDeque<>();
+    private volatile Segment current;
+    private volatile boolean unsynced;
+    private volatile boolean running;
+    private Thread syncThread;
+
+    // What scanned records say is saved or superseded stays true after their segment is deleted,
+    // so it is kept until the active segment is the only one left
+    private final Object truncation = new Object();
+    private final Map<Key, Entry> knownLatest = new HashMap<>();
+    private final Map<Key, Map<Long, Entry>> knownSaved = new HashMap<>();
+    private volatile boolean rolled;
+    private boolean blocked;
+
+    public TransactionJournal(File directory, int segmentBytes, long syncIntervalMillis, Logger logger) {
+        this.directory = directory;
+        this.segmentBytes = Math.max(RECORD_SIZE * 1024, segmentBytes / RECORD_SIZE * RECORD_SIZE);
+        this.syncIntervalMillis = Math.max(1L, syncIntervalMillis);
+        this.logger = logger;
+    }
+
+    /**
+     * Maps the existing segments (for {@link #replay()}) and starts the sync thread.
+     */
+    public void open() throws IOException {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Could not create journal directory " + directory);
+        }
+
+        File[] files = directory.listFiles((dir, name) -> name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX));
+        List<Long> ids = new ArrayList<>();
+        if (files != null) {
+            for (File file : files) {
+                String name = file.getName();
+                try {
+                    ids.add(Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length())));
+                } catch (NumberFormatException ignored) {
+                    // Not ours
+                }
+            }
+        }
+        ids.sort(null);
+        for (long id : ids) {
+            Segment segment = new Segment(id, segmentFile(id), segmentBytes, true);
+            // Never append into an old segment, a half-written slot may be in it
+            segment.next.set(segment.capacity);
+            segments.addLast(segment);
+        }
+        roll(null);
+
+        running = true;
+        syncThread = new Thread(this::syncLoop, "vEconomy-journal");
+        syncThread.setDaemon(true);
+        syncThread.start();
+    }
+
+    /**
+     * Stops the sync thread and flushes everything to disk.
+     */
+    public void close() {
+        running = false;
+        if (syncThread != null) {
+            syncThread.interrupt();
+            try {
+                syncThread.join(1000L);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        segments.forEach(Segment::close);
+        segments.clear();
+    }
+
+    // --- Writing ---
+
+    /**
+     * Records the current balance of one currency of an in-memory account.
+     * Call after every change; it is cheap enough for the transaction path.
+     */
+    public void recordBalance(UUID uuid, UserAccount account, int currency) {
+        // Version first: the balance read afterwards is guaranteed to include it
+        long version = account.getVersion(currency);
+        CurrencyRegistry registry = account.getRegistry();
+
+        ByteBuffer buf = begin(TYPE_BALANCE, uuid, account.getInstanceId(), version);
+        if (!putCurrency(buf, registry.idOf(currency))) return;
+        if (account.isFixedPoint()) {
+            buf.put(6, (byte) registry.scaleOf(currency));
+            buf.put(7, (byte) Long.BYTES);
+            buf.putLong(HEADER_SIZE + MAX_CURRENCY_BYTES, account.getUnits(currency));
+        } else if (!putBalance(buf, account.getBalance(currency))) {
+            logger.warning("Balance too large to journal for " + uuid + " (" + registry.idOf(currency) + ")");
+            return;
+        }
+        append(buf);
+    }
+
+    /**
+     * Records that the given snapshots of an account are in the database, with the stored balances
+     * the save left on the account. Older balance records of the same account instance are no longer replayed.
+     */
+    public void recordSaved(UUID uuid, UserAccount account, List<UserAccount.Snapshot> saved) {
+        for (UserAccount.Snapshot snapshot : saved) {
+            recordStored(uuid, account, snapshot.currency(), snapshot.version());
+        }
+    }
+
+    /**
+     * Records what a freshly loaded account holds, before anyone can change it, so changes made
+     * afterwards replay on top of the stored balances.
+     */
+    public void recordLoaded(UUID uuid, UserAccount account) {
+        for (int currency = 0; currency < account.getRegistry().size(); currency++) {
+            recordStored(uuid, account, currency, account.getVersion(currency));
+        }
+    }
+
+    private void recordStored(UUID uuid, UserAccount account, int currency, long version) {
+        ByteBuffer buf = begin(TYPE_SAVED, uuid, account.getInstanceId(), version);
+        if (!putCurrency(buf, account.getRegistry().idOf(currency))) return;
+        // A balance too large to fit only costs the marker its stored balance
+        if (!putBalance(buf, account.getStoredBalance(currency))) {
+            buf.put(6, (byte) 0);
+            buf.put(7, (byte) 0);
+        }
+        append(buf);
+    }
+
+    private boolean putBalance(ByteBuffer buf, BigDecimal balance) {
+        byte[] unscaled = balance.unscaledValue().toByteArray();
+        if (unscaled.length > MAX_UNSCALED_BYTES || balance.scale() > Byte.MAX_VALUE || balance.scale() < Byte.MIN_VALUE) {
+            return false;
+        }
+        buf.put(6, (byte) balance.scale());
+        buf.put(7, (byte) unscaled.length);
+        buf.put(HEADER_SIZE + MAX_CURRENCY_BYTES, unscaled);
+        return true;
+    }
+
+    private ByteBuffer begin(byte type, UUID uuid, long instance, long version) {
+        ByteBuffer buf = SCRATCH.get().buffer();
+        Arrays.fill(buf.array(), (byte) 0);
+        buf.put(4, type);
+        buf.putLong(8, uuid.getMostSignificantBits());
+        buf.putLong(16, uuid.getLeastSignificantBits());
+        buf.putLong(24, instance);
+        buf.putLong(32, version);
+        return buf;
+    }
+
+    private boolean putCurrency(ByteBuffer buf, String currency) {
+        byte[] id = currency.getBytes(StandardCharsets.UTF_8);
+        if (id.length > MAX_CURRENCY_BYTES) {
+            logger.warning("Currency ID too long to journal: " + currency);
+            return false;
+        }
+        buf.put(5, (byte) id.length);
+        buf.put(HEADER_SIZE, id);
+        return true;
+    }
+
+    private void append(ByteBuffer buf) {
+        CRC32C crc = SCRATCH.get().crc();
+        crc.reset();
+        crc.update(buf.array(), 4, RECORD_SIZE - 4);
+        // Zero marks an empty slot, so a valid checksum never is
+        int checksum = (int) crc.getValue() | 1;
+
+        while (true) {
+            Segment segment = current;
+            int slot = segment.next.getAndIncrement();
+            if (slot < segment.capacity) {
+                int offset = slot * RECORD_SIZE;
+                // Body first, checksum last: a torn record never validates
+                segment.buffer.put(offset + 4, buf.array(), 4, RECORD_SIZE - 4);
+                segment.buffer.putInt(offset, checksum);
+                unsynced = true;
+                return;
+            }
+            if (!roll(segment)) return;
+        }
+    }
+
+    private synchronized boolean roll(Segment full) {
+        if (full != null && current != full) return true; // Someone else already rolled
+        try {
+            long id = segments.isEmpty() ? 1L : segments.getLast().id + 1;
+            Segment segment = new Segment(id, segmentFile(id), segmentBytes, false);
+            segments.addLast(segment);
+            current = segment;
+            rolled = true;
+            if (full != null) full.buffer.force();
+            return true;
+        } catch (IOException e) {
+            // Drop the record rather than failing the transaction; the DB saves still run
+            logger.log(Level.SEVERE, "Could not create journal segment, record dropped!", e);
+            if (current == null) throw new IllegalStateException("Journal unavailable", e);
+            return false;
+        }
+    }
+
+    private void syncLoop() {
+        while (running) {
+            try {
+                Thread.sleep(syncIntervalMillis);
+            } catch (InterruptedException e) {
+                if (!running) break;
+            }
+            if (unsynced) {
+                unsynced = false;
+                try {
+                    // Also covers writers that reserved a slot just before a roll
+                    for (Segment segment : segments) segment.buffer.force();
+                } catch (RuntimeException e) {
+                    logger.log(Level.WARNING, "Journal sync failed", e);
+                }
+            }
+        }
+    }
+
+    // --- Recovery and truncation ---
+
+    /**
+     * Reads every segment and returns the balances that are newer than what was saved to the database.
+     * @return Balances to restore, per player and currency ID.
+     */
+    public Map<UUID, Map<String, Unsaved>> replay() {
+        Map<Key, Entry> latest = new HashMap<>();
+        Map<Key, Map<Long, Entry>> saved = new HashMap<>();
+        scan(segments, latest, saved);
+
+        Map<UUID, Map<String, Unsaved>> pending = new HashMap<>();
+        latest.forEach((key, entry) -> {
+            Entry marker = saved.getOrDefault(key, Map.of()).get(entry.instance());
+            if (marker == null || marker.version() < entry.version()) {
+                Unsaved unsaved = new Unsaved(entry.balance(), marker != null ? marker.balance() : null);
+                pending.computeIfAbsent(key.uuid(), k -> new HashMap<>()).put(key.currency(), unsaved);
+            }
+        });
+        return pending;
+    }
+
+    /**
+     * Writes the balances that never reached the database to the store, each as the change it made to
+     * the stored balance, so whatever other servers of the network wrote to the row after the crash stays.
+     *
+     * @param startBalances Start balance per currency ID; balances of other currencies are skipped.
+     * @return The number of players recovered.
+     * @throws RuntimeException if the store fails.
+     */
+    public int recover(StorageBackend storage, Map<String, BigDecimal> startBalances) {
+        Map<UUID, Map<String, Unsaved>> pending = replay();
+        pending.forEach((uuid, balances) -> balances.forEach((currencyId, unsaved) -> {
+            BigDecimal startBalance = startBalances.get(currencyId);
+            if (startBalance == null) return;
+            if (unsaved.stored() == null) {
+                // Journals of older versions only know the absolute balance
+                storage.setOffline(uuid, currencyId, unsaved.balance());
+            } else if (unsaved.balance().compareTo(unsaved.stored()) != 0) {
+                storage.mergeOffline(uuid, currencyId, unsaved.balance().subtract(unsaved.stored()), startBalance);
+            }
+        }));
+        return pending.size();
+    }
+
+    /**
+     * Deletes the oldest full segments whose records are all in the database already
+     * (or superseded by newer records). Only reads the records appended since the last call, and
+     * returns right away unless a segment filled up or an older one was still waiting for saves.
+     * Never holds up writers rolling to a new segment.
+     */
+    public void truncate() {
+        synchronized (truncation) {
+            if (!rolled && !blocked) return;
+            rolled = false;
+            for (Segment segment : segments) scanNew(segment);
+
+            while (segments.size() > 1) {
+                Segment oldest = segments.getFirst();
+                if (oldest == current || !isCovered(oldest, knownLatest, knownSaved)) break;
+                segments.removeFirst();
+                oldest.close();
+                if (!oldest.file.delete()) {
+                    logger.warning("Could not delete journal segment " + oldest.file.getName());
+                }
+            }
+
+            blocked = segments.size() > 1;
+            if (!blocked) {
+                // Start over from the active segment, so the state doesn't grow with the uptime
+                knownLatest.clear();
+                knownSaved.clear();
+                for (Segment segment : segments) segment.scanned = 0;
+            }
+        }
+    }
+
+    // Caller holds truncation
+    private void scanNew(Segment segment) {
+        ByteBuffer buf = segment.buffer.duplicate();
+        int end = segment.sealed ? segment.capacity : Math.min(segment.next.get(), segment.capacity);
+        while (segment.scanned < end) {
+            Record record = read(buf, segment.scanned);
+            // A reserved slot may still be being written, read it again next time
+            if (record == null && !segment.sealed) break;
+            if (record != null) fold(record, knownLatest, knownSaved);
+            segment.scanned++;
+        }
+    }
+
+    /**
+     * Discards the whole journal. Only call once every account is confirmed in the database.
+     */
+    public void reset() throws IOException {
+        synchronized (truncation) {
+            synchronized (this) {
+                discardAll();
+            }
+            knownLatest.clear();
+            knownSaved.clear();
+            blocked = false;
+        }
+    }
+
+    // Caller holds both locks
+    private void discardAll() throws IOException {
+        Segment active = current;
+        for (Segment segment : new ArrayList<>(segments)) {
+            if (segment == active) continue;
+            segments.remove(segment);
+            segment.close();
+            if (!segment.file.delete()) {
+                logger.warning("Could not delete journal segment " + segment.file.getName());
+            }
+        }
+        roll(active);
+        segments.remove(active);
+        active.close();
+        if (!active.file.delete()) {
+            logger.warning("Could not delete journal segment " + active.file.getName());
+        }
+    }
+
+    // A segment can go when each of its records is saved, or replay would pick a newer one anyway
+    private boolean isCovered(Segment segment, Map<Key, Entry> latest, Map<Key, Map<Long, Entry>> saved) {
+        ByteBuffer buf = segment.buffer.duplicate();
+        for (int slot = 0; slot < segment.capacity; slot++) {
+            Record record = read(buf, slot);
+            if (record == null || record.type != TYPE_BALANCE) continue;
+
+            Key key = new Key(record.uuid, record.currency);
+            Entry marker = saved.getOrDefault(key, Map.of()).get(record.instance);
+            if (marker != null && marker.version() >= record.version) continue;
+
+            Entry newest = latest.get(key);
+            if (newest != null && isNewer(newest.instance(), newest.version(), record.instance, record.version)) continue;
+            return false;
+        }
+        return true;
+    }
+
+    private void scan(Iterable<Segment> source, Map<Key, Entry> latest, Map<Key, Map<Long, Entry>> saved) {
+        for (Segment segment : source) {
+            ByteBuffer buf = segment.buffer.duplicate();
+            for (int slot = 0; slot < segment.capacity; slot++) {
+                Record record = read(buf, slot);
+                if (record != null) fold(record, latest, saved);
+            }
+        }
+    }
+
+    private static void fold(Record record, Map<Key, Entry> latest, Map<Key, Map<Long, Entry>> saved) {
+        Key key = new Key(record.uuid, record.currency);
+        if (record.type == TYPE_SAVED) {
+            // The newest marker of the instance tells both what is saved and what the database held then
+            Entry marker = new Entry(record.instance, record.version, record.balance);
+            saved.computeIfAbsent(key, k -> new HashMap<>()).merge(record.instance, marker,
+                    (known, neo) -> neo.version() > known.version() ? neo : known);
+        } else if (record.type == TYPE_BALANCE) {
+            Entry known = latest.get(key);
+            if (known == null || isNewer(record.instance, record.version, known.instance(), known.version())) {
+                latest.put(key, new Entry(record.instance, record.version, record.balance));
+            }
+        }
+    }
+
+    private static boolean isNewer(long instance, long version, long otherInstance, long otherVersion) {
+        return instance > otherInstance || (instance == otherInstance && version > otherVersion);
+    }
+
+    private record Record(byte type, UUID uuid, long instance, long version, String currency, BigDecimal balance) {}
+
+    private static Record read(ByteBuffer buf, int slot) {
+        int offset = slot * RECORD_SIZE;
+        int checksum = buf.getInt(offset);
+        if (checksum == 0) return null;
+
+        byte[] body = new byte[RECORD_SIZE - 4];
+        buf.get(offset + 4, body);
+        CRC32C crc = new CRC32C();
+        crc.update(body);
+        if (((int) crc.getValue() | 1) != checksum) return null; // Torn write
+
+        ByteBuffer record = ByteBuffer.wrap(body);
+        byte type = record.get(0);
+        int currencyLength = record.get(1);
+        int scale = record.get(2);
+        int unscaledLength = record.get(3);
+        UUID uuid = new UUID(record.getLong(4), record.getLong(12));
+        long instance = record.getLong(20);
+        long version = record.getLong(28);
+        if (currencyLength < 0 || currencyLength > MAX_CURRENCY_BYTES || unscaledLength < 0 || unscaledLength > MAX_UNSCALED_BYTES) return null;
+
+        String currency = new String(body, HEADER_SIZE - 4, currencyLength, StandardCharsets.UTF_8);
+        BigDecimal balance = null;
+        if (unscaledLength > 0) {
+            byte[] unscaled = new byte[unscaledLength];
+            record.get(HEADER_SIZE + MAX_CURRENCY_BYTES - 4, unscaled);
+            balance = new BigDecimal(new BigInteger(unscaled), scale);
+        }
+        return new Record(type, uuid, instance, version, currency, balance);
+    }
+
+    private File segmentFile(long id) {
+        return new File(directory, SEGMENT_PREFIX + String.format("%012d", id) + SEGMENT_SUFFIX);
+    }
+}
@@ -1,14 +1,34 @@
 package com.vitor;
 
+import com.vitor.api.AsyncEconomyAPI;
+import com.vitor.api.LeaderboardEntry;
+import com.vitor.api.PayoutResult;
+import com.vitor.api.TransactionRecord;
+import com.vitor.api.TransferLeg;
 import com.vitor.api.vEconomyAPI;
+import com.vitor.metrics.LatencyHistogram;
+import com.vitor.metrics.Telemetry;
+import com.vitor.metrics.TimedEconomyAPI;
+import com.vitor.model.CurrencyFormatter;
+import com.vitor.model.CurrencyRegistry;
+import com.vitor.model.FixedPoint;
+import com.vitor.model.Leaderboard;
+import com.vitor.model.Placeholder;
 import com.vitor.model.UserAccount;
+import com.vitor.storage.AccountLoadCoalescer;
+import com.vitor.storage.AuditLog;
 import com.vitor.storage.DatabaseManager;
+import com.vitor.storage.OfflineAccountCache;
+import com.vitor.storage.PlayerNameIndex;
+import com.vitor.storage.StorageBackend;
+import com.vitor.storage.TransactionHistory;
+import com.vitor.storage.TransactionJournal;
 import me.clip.placeholderapi.expansion.PlaceholderExpansion;
 import org.bukkit.Bukkit;
 import org.bukkit.OfflinePlayer;
 import org.bukkit.command.Command;
-import org.bukkit.command.CommandExecutor;
 import org.bukkit.command.CommandSender;
+import org.bukkit.command.TabExecutor;
 import org.bukkit.entity.Player;
 import org.bukkit.event.EventHandler;
 import org.bukkit.event.EventPriority;
@@ -19,43 +39,192 @@ import org.bukkit.plugin.ServicePriority;
 import org.bukkit.plugin.java.JavaPlugin;
 import org.jetbrains.annotations.NotNull;
 
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 import java.math.BigDecimal;
-import java.text.DecimalFormat;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
 import java.util.logging.Level;
 
-public class vEconomy extends JavaPlugin implements Listener, vEconomyAPI {
+public class vEconomy extends JavaPlugin implements Listener, vEconomyAPI, StorageBackend.Host {
 
-    private DatabaseManager dbManager;
+    private StorageBackend storage;
     private final Map<UUID, UserAccount> accountCache = new ConcurrentHashMap<>();
+    private OfflineAccountCache offlineCache;
+
+    // Name -> UUID lookups for commands and tab completion, filled on login
+    private PlayerNameIndex nameIndex;
+
+    // Batches login loads during login storms, null when disabled
+    private AccountLoadCoalescer loginLoader;
+
+    // Write-ahead journal of in-memory changes, null when disabled
+    private TransactionJournal journal;
+
+    // NDJSON audit trail of every balance change, null when disabled
+    private AuditLog auditLog;
+
+    // Every balance change in the transactions table, for /veco history; null when disabled
+    private TransactionHistory history;
+
+    // Top balances per currency index, updated on every change
+    private Leaderboard[] leaderboards;
+
+    // Server-wide counters and latency histograms; the API handed to other plugins is timed through it
+    private Telemetry telemetry;
+    private vEconomyAPI timedApi;
+
+    // Striped player locks for operations spanning several accounts (transfers) and for login/quit,
+    // so a player can't change between online and offline in the middle of a transfer
+    private final ReentrantLock[] playerLocks = new ReentrantLock[64];
+
+    // Counts offline writes per lock stripe; logins load without the lock and reload if it moved meanwhile
+    private final AtomicLongArray offlineWrites = new AtomicLongArray(playerLocks.length);
+
+    // Quit saves still in flight; offline writes and logins wait for them so they never read stale rows
+    private final Map<UUID, CompletableFuture<Void>> pendingQuitSaves = new ConcurrentHashMap<>();
+    private final AsyncEconomy asyncApi = new AsyncEconomy();
+
+    // Blocking DB work requested by commands and the async API; one virtual thread per task
+    private ExecutorService ioExecutor;
     private final Map<String, CurrencyConfig> currencyConfigs = new HashMap<>();
+    private CurrencyRegistry registry;
+    private BigDecimal[] defaultBalances;
     private boolean loggingEnabled;
+    private int metricsWindow = UserAccount.DEFAULT_METRICS_WINDOW;
+
+    // Compiled once per currency index; format() is called by placeholders many times per second
+    private CurrencyFormatter[] formatters;
+    private boolean cacheFormatted;
+
+    // Staggered auto-save: accounts are split by UUID hash, one shard is flushed per interval
+    private int autoSaveShards = 1;
+    private int nextShard = 0;
+
+    private static final String DEFAULT_FORMAT = "#,##0.00";
+    private static final int MIGRATION_PAGE_ROWS = 1000;
+    private static final int MAX_HISTORY_PAGE = 500;
+    private static final int LOGIN_LOAD_ATTEMPTS = 3;
 
     // Record for currency configuration (Java 21 feature)
-    public record CurrencyConfig(String id, String name, String symbol, double startBalance, String formatPattern) {}
+    public record CurrencyConfig(String id, String name, String symbol, double startBalance, String formatPattern, int scale) {}
 
     @Override
     public void onEnable() {
         saveDefaultConfig();
         loadConfiguration();
+        for (int i = 0; i < playerLocks.length; i++) playerLocks[i] = new ReentrantLock();
+        this.ioExecutor = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("vEconomy-io-", 0).factory());
+        this.offlineCache = new OfflineAccountCache(
+                getConfig().getInt("offline_cache.max_size", 2000),
+                getConfig().getLong("offline_cache.ttl_seconds", 60L));
+        this.telemetry = new Telemetry(registry, metricsWindow);
+        this.timedApi = new TimedEconomyAPI(this, telemetry);
 
         // Initialize Database
         try {
-            this.dbManager = new DatabaseManager(this);
+            this.storage = DatabaseManager.open(this, getConfig().getString("database.preferred_db", "MariaDB"));
         } catch (Exception e) {
             getLogger().log(Level.SEVERE, "Failed to connect to database! Disabling plugin.", e);
             getServer().getPluginManager().disablePlugin(this);
             return;
         }
 
+        // Recover changes lost in a crash before anyone can log in
+        if (getConfig().getBoolean("journal.enabled", true)) {
+            try {
+                openJournal();
+            } catch (Exception e) {
+                getLogger().log(Level.SEVERE, "Failed to recover the transaction journal! Disabling plugin.", e);
+                getServer().getPluginManager().disablePlugin(this);
+                return;
+            }
+        }
+
+        if (getConfig().getBoolean("transaction_log.enabled", true)) {
+            AuditLog opened = new AuditLog(
+                    new File(getDataFolder(), "transactions"),
+                    getConfig().getInt("transaction_log.buffer_size", 65536),
+                    getConfig().getLong("transaction_log.max_file_mb", 64L) << 20,
+                    getConfig().getInt("transaction_log.max_files", 20),
+                    getConfig().getLong("transaction_log.flush_interval_ms", 200L),
+                    getLogger());
+            try {
+                opened.open();
+                this.auditLog = opened;
+            } catch (IOException e) {
+                getLogger().log(Level.WARNING, "Could not open the transaction log, transactions are not logged", e);
+            }
+        }
+
+        if (getConfig().getBoolean("transaction_history.enabled", true)) {
+            this.history = new TransactionHistory(storage,
+                    getConfig().getInt("transaction_history.buffer_size", 65536),
+                    getConfig().getLong("transaction_history.retention_days", 90L),
+                    getLogger());
+            history.start(getConfig().getLong("transaction_history.flush_interval_ms", 1000L));
+        }
+
+        this.nameIndex = new PlayerNameIndex(storage);
+        try {
+            nameIndex.load();
+        } catch (RuntimeException e) {
+            getLogger().log(Level.WARNING, "Could not load the player name index, names are looked up in the database", e);
+        }
+        if (nameIndex.size() == 0) ioExecutor.execute(this::seedNameIndex);
+
+        long loginWindow = getConfig().getLong("login_batching.window_ms", 20L);
+        if (loginWindow > 0) {
+            int maxBatch = Math.max(1, getConfig().getInt("login_batching.max_batch", 200));
+            this.loginLoader = new AccountLoadCoalescer(storage, getDefaultBalances(), loginWindow, maxBatch, ioExecutor);
+        }
+
+        // Money supply is summed once, then follows every faucet and sink
+        telemetry.setPoolStats(storage::getPoolStats);
+        storage.loadSupply().forEach((currencyId, supply) -> {
+            int currency = registry.indexOf(currencyId);
+            if (currency != CurrencyRegistry.UNKNOWN) telemetry.seedSupply(currency, supply);
+        });
+        try {
+            telemetry.registerMBean();
+        } catch (Exception e) {
+            getLogger().log(Level.WARNING, "Could not register the telemetry MBean", e);
+        }
+
+        // Seed the leaderboards once, later changes keep them current
+        int leaderboardSize = Math.max(1, getConfig().getInt("leaderboard.size", 100));
+        this.leaderboards = new Leaderboard[registry.size()];
+        for (int i = 0; i < leaderboards.length; i++) {
+            leaderboards[i] = new Leaderboard(leaderboardSize, nameIndex::getName);
+            seedLeaderboard(i);
+        }
+
         // Register API
-        getServer().getServicesManager().register(vEconomyAPI.class, this, this, ServicePriority.Highest);
+        getServer().getServicesManager().register(vEconomyAPI.class, timedApi, this, ServicePriority.Highest);
+        getServer().getServicesManager().register(AsyncEconomyAPI.class, asyncApi, this, ServicePriority.Highest);
 
         // Register Commands and Events
-        Objects.requireNonNull(getCommand("veconomy")).setExecutor(new EconomyCommand());
-        Objects.requireNonNull(getCommand("money")).setExecutor(new EconomyCommand());
+        EconomyCommand economyCommand = new EconomyCommand();
+        Objects.requireNonNull(getCommand("veconomy")).setExecutor(economyCommand);
+        Objects.requireNonNull(getCommand("veconomy")).setTabCompleter(economyCommand);
+        Objects.requireNonNull(getCommand("money")).setExecutor(economyCommand);
+        Objects.requireNonNull(getCommand("money")).setTabCompleter(economyCommand);
         getServer().getPluginManager().registerEvents(this, this);
 
         // Hook PlaceholderAPI
@@ -63,34 +232,88 @@ public class vEconomy extends JavaPlugin implements Listener, vEconomyAPI {
             new EconomyExpansion().register();
         }
 
-        // Auto-Save Task (Async) - every 5 minutes (6000 ticks)
-        getServer().getScheduler().runTaskTimerAsynchronously(this, () -> {
-            if (loggingEnabled) getLogger().info("Starting auto-save...");
-            accountCache.forEach((uuid, acc) -> dbManager.saveAccount(uuid, acc));
-        }, 6000L, 6000L);
-
-        // Metrics Task (Sliding Windows) - every 1 second (20 ticks)
-        getServer().getScheduler().runTaskTimerAsynchronously(this, () -> {
-            accountCache.values().forEach(UserAccount::tickMetrics);
-        }, 20L, 20L);
+        // Auto-Save Task (Async) - one shard per interval, so every account is flushed within max_staleness
+        long saveInterval = Math.max(1L, getConfig().getLong("auto_save.interval_ticks", 100L));
+        long maxStalenessTicks = Math.max(saveInterval, getConfig().getLong("auto_save.max_staleness_seconds", 300L) * 20L);
+        this.autoSaveShards = (int) Math.min(Integer.MAX_VALUE, (maxStalenessTicks + saveInterval - 1) / saveInterval);
+        getServer().getScheduler().runTaskTimerAsynchronously(this, this::saveNextShard, saveInterval, saveInterval);
+
+        // Prometheus text file, for node_exporter's textfile collector or similar
+        if (getConfig().getBoolean("metrics.prometheus.enabled", false)) {
+            long exportTicks = Math.max(1L, getConfig().getLong("metrics.prometheus.interval_seconds", 15L)) * 20L;
+            Path target = getDataFolder().toPath().resolve(getConfig().getString("metrics.prometheus.file", "metrics.prom"));
+            getServer().getScheduler().runTaskTimerAsynchronously(this, () -> writePrometheus(target), exportTicks, exportTicks);
+        }
 
         getLogger().info("vEconomy loaded with Java 21 and HikariCP.");
     }
 
     @Override
     public void onDisable() {
+        if (telemetry != null) telemetry.unregisterMBean();
+        if (loginLoader != null) loginLoader.close();
+
+        // Let pending offline operations and quit saves finish before the final flush
+        if (ioExecutor != null) {
+            ioExecutor.shutdown();
+            try {
+                if (!ioExecutor.awaitTermination(10, TimeUnit.SECONDS)) {
+                    getLogger().warning("Some asynchronous economy operations did not finish in time.");
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        // Before the storage closes: inserts what is still queued
+        if (history != null) history.close();
+
         // Save everything on shutdown
-        if (dbManager != null) {
+        if (storage != null) {
             getLogger().info("Saving data...");
             // Synchronous save on shutdown to guarantee persistence
-            accountCache.forEach((uuid, acc) -> dbManager.saveAccount(uuid, acc));
-            dbManager.close();
+            storage.saveAccounts(accountCache, true);
+            if (journal != null) {
+                // Keep the journal if anything failed to save, it gets replayed on next start
+                if (accountCache.values().stream().noneMatch(UserAccount::isDirty)) {
+                    try {
+                        journal.reset();
+                    } catch (IOException e) {
+                        getLogger().log(Level.WARNING, "Could not clear the transaction journal", e);
+                    }
+                }
+                journal.close();
+            }
+            storage.close();
         }
+        if (auditLog != null) auditLog.close();
+    }
+
+    /**
+     * Opens the journal, writes the balances it holds that never reached the DB, then starts a fresh one.
+     */
+    private void openJournal() throws IOException {
+        TransactionJournal opened = new TransactionJournal(
+                new File(getDataFolder(), "journal"),
+                (int) Math.min(Integer.MAX_VALUE, getConfig().getLong("journal.segment_size_mb", 4L) << 20),
+                getConfig().getLong("journal.sync_interval_ms", 50L),
+                getLogger());
+        opened.open();
+
+        Map<String, BigDecimal> startBalances = new HashMap<>();
+        for (int i = 0; i < registry.size(); i++) startBalances.put(registry.idOf(i), defaultBalances[i]);
+        int recovered = opened.recover(storage, startBalances);
+        if (recovered > 0) getLogger().warning("Recovered " + recovered + " accounts from the transaction journal.");
+        opened.reset();
+        this.journal = opened;
     }
 
     private void loadConfiguration() {
         this.loggingEnabled = getConfig().getBoolean("logging");
+        this.metricsWindow = Math.max(1, getConfig().getInt("metrics.window_seconds", UserAccount.DEFAULT_METRICS_WINDOW));
         this.currencyConfigs.clear();
+        List<String> ids = new ArrayList<>();
+        List<Integer> scales = new ArrayList<>();
 
         var section = getConfig().getConfigurationSection("currencies");
         if (section != null) {
@@ -99,9 +322,113 @@ public class vEconomy extends JavaPlugin implements Listener, vEconomyAPI {
                 String symbol = section.getString(key + ".symbol");
                 double start = section.getDouble(key + ".start_balance");
                 String format = section.getString(key + ".format");
-                currencyConfigs.put(key, new CurrencyConfig(key, name, symbol, start, format));
+                int scale = FixedPoint.checkScale(section.getInt(key + ".scale", FixedPoint.MAX_SCALE));
+                currencyConfigs.put(key, new CurrencyConfig(key, name, symbol, start, format, scale));
+                ids.add(key);
+                scales.add(scale);
+            }
+        }
+
+        this.registry = new CurrencyRegistry(ids, scales, getConfig().getBoolean("fixed_point", false));
+        this.defaultBalances = new BigDecimal[registry.size()];
+        this.formatters = new CurrencyFormatter[registry.size()];
+        for (int i = 0; i < registry.size(); i++) {
+            CurrencyConfig conf = currencyConfigs.get(registry.idOf(i));
+            defaultBalances[i] = BigDecimal.valueOf(conf.startBalance);
+            try {
+                formatters[i] = new CurrencyFormatter(conf.symbol, conf.formatPattern != null ? conf.formatPattern : DEFAULT_FORMAT);
+            } catch (IllegalArgumentException e) {
+                getLogger().warning("Invalid format '" + conf.formatPattern + "' for currency " + conf.id + ", using " + DEFAULT_FORMAT);
+                formatters[i] = new CurrencyFormatter(conf.symbol, DEFAULT_FORMAT);
             }
         }
+        this.cacheFormatted = getConfig().getBoolean("formatting.cache_per_account", true);
+    }
+
+    /**
+     * Flushes the accounts of the next auto-save shard.
+     * Runs on a single async timer, so the shard cursor needs no synchronization.
+     */
+    private void saveNextShard() {
+        int shard = nextShard;
+        nextShard = (shard + 1) % autoSaveShards;
+
+        // Once per cycle: by then every account was saved since the last pass, so old segments are covered
+        if (journal != null && shard == 0) journal.truncate();
+
+        Map<UUID, UserAccount> batch = new HashMap<>();
+        accountCache.forEach((uuid, acc) -> {
+            if (Math.floorMod(uuid.hashCode(), autoSaveShards) == shard && acc.isDirty()) batch.put(uuid, acc);
+        });
+        if (batch.isEmpty()) return;
+
+        if (loggingEnabled) getLogger().info("Auto-save shard " + (shard + 1) + "/" + autoSaveShards + " (" + batch.size() + " accounts)...");
+        storage.saveAccounts(batch, false);
+    }
+
+    /**
+     * Copies every stored balance, the name index and the transaction history into another backend
+     * type, after flushing online accounts and queued history rows. History records keep their ids.
+     * Offline changes made while it runs may be missed, so run it on a quiet server.
+     * @return Number of balance rows and of history records copied.
+     */
+    private long[] migrateTo(String targetType) {
+        storage.saveAccounts(accountCache, true);
+        if (history != null) history.sync();
+        StorageBackend target = DatabaseManager.open(this, targetType);
+        try {
+            long[] copied = {0, 0};
+            storage.scan(MIGRATION_PAGE_ROWS, rows -> {
+                target.importBalances(rows);
+                copied[0] += rows.size();
+            });
+            List<StorageBackend.StoredName> names = new ArrayList<>();
+            storage.loadNames(names::add);
+            target.saveNames(names);
+            storage.scanHistory(MIGRATION_PAGE_ROWS, records -> {
+                target.importHistory(records);
+                copied[1] += records.size();
+            });
+            return copied;
+        } finally {
+            target.close();
+        }
+    }
+
+    /**
+     * Fills an empty name index once from the server's player data, so players who haven't
+     * logged in since the index was introduced can still be found by name.
+     */
+    private void seedNameIndex() {
+        List<StorageBackend.StoredName> known = new ArrayList<>();
+        for (OfflinePlayer player : Bukkit.getOfflinePlayers()) {
+            if (player.getName() != null) known.add(new StorageBackend.StoredName(player.getUniqueId(), player.getName(), player.getLastPlayed()));
+        }
+        nameIndex.seed(known);
+        getLogger().info("Indexed " + known.size() + " player names from the server's player data.");
+    }
+
+    /**
+     * Writes the metrics to a temp file first, so scrapers never read a half-written file.
+     */
+    private void writePrometheus(Path target) {
+        Path temp = target.resolveSibling(target.getFileName() + ".tmp");
+        try {
+            try (Writer out = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+                telemetry.writePrometheus(out);
+            }
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            getLogger().log(Level.WARNING, "Could not write " + target.getFileName(), e);
+        }
+    }
+
+    public Telemetry getTelemetry() {
+        return telemetry;
+    }
+
+    public TransactionJournal getJournal() {
+        return journal;
     }
 
     public boolean isLoggingEnabled() {
@@ -109,133 +436,581 @@ public class vEconomy extends JavaPlugin implements Listener, vEconomyAPI {
     }
 
     public vEconomyAPI getAPI() {
-        return this;
+        return timedApi;
+    }
+
+    public AsyncEconomyAPI getAsyncAPI() {
+        return asyncApi;
+    }
+
+    public CurrencyRegistry getRegistry() {
+        return registry;
     }
 
-    private Map<String, Double> getDefaultBalances() {
-        Map<String, Double> defaults = new HashMap<>();
-        currencyConfigs.values().forEach(c -> defaults.put(c.id, c.startBalance));
-        return defaults;
+    /**
+     * Creates an empty account using the configured balance engine.
+     */
+    public UserAccount newAccount() {
+        return new UserAccount(registry, metricsWindow);
+    }
+
+    /**
+     * Starting balances, indexed like the registry.
+     */
+    private BigDecimal[] getDefaultBalances() {
+        return defaultBalances;
+    }
+
+    // Resolves the currency ID once at the API boundary
+    private int requireCurrency(String currencyId) {
+        int index = registry.indexOf(currencyId);
+        if (index == CurrencyRegistry.UNKNOWN) throw new IllegalArgumentException("Unknown currency: " + currencyId);
+        return index;
+    }
+
+    // Same validation for online and offline paths, even though offline amounts never become fixed-point units
+    private void checkAmount(int currency, BigDecimal amount) {
+        if (amount.compareTo(BigDecimal.ZERO) < 0) throw new IllegalArgumentException("Amount cannot be negative");
+        if (registry.isFixedPoint()) FixedPoint.toUnits(amount, registry.scaleOf(currency));
+    }
+
+    private void awaitPendingSave(UUID playerUuid) {
+        CompletableFuture<Void> pending = pendingQuitSaves.get(playerUuid);
+        if (pending != null) pending.join();
     }
 
     // --- API Implementation ---
 
     @Override
     public boolean currencyExists(String currencyId) {
-        return currencyConfigs.containsKey(currencyId);
+        return registry.indexOf(currencyId) != CurrencyRegistry.UNKNOWN;
     }
 
     @Override
     public Set<String> getRegisteredCurrencies() {
-        return Collections.unmodifiableSet(currencyConfigs.keySet());
+        return registry.ids();
     }
 
     /**
-     * Gets balance. If user is not in cache (offline), loads temporarily from DB.
+     * Gets balance. If user is not in cache (offline), reads the offline cache or loads from DB.
      */
     @Override
     public BigDecimal getBalance(UUID playerUuid, String currencyId) {
+        int currency = registry.indexOf(currencyId);
+        if (currency == CurrencyRegistry.UNKNOWN) return BigDecimal.ZERO;
+
         UserAccount acc = accountCache.get(playerUuid);
         if (acc != null) {
-            return acc.getBalance(currencyId);
+            return acc.getBalance(currency);
         }
 
-        // Fallback for offline player (synchronous load)
-        UserAccount offlineAcc = dbManager.loadAccount(playerUuid, getDefaultBalances());
-        return offlineAcc.getBalance(currencyId);
+        return getOfflineAccount(playerUuid).getBalance(currency);
     }
 
     @Override
     public BigDecimal deposit(UUID playerUuid, String currencyId, BigDecimal amount) {
-        if (amount.compareTo(BigDecimal.ZERO) < 0) throw new IllegalArgumentException("Amount cannot be negative");
+        int currency = requireCurrency(currencyId);
+        checkAmount(currency, amount);
 
         UserAccount acc = accountCache.get(playerUuid);
         if (acc != null) {
-            // Online player logic
-            BigDecimal current = acc.getBalance(currencyId);
-            BigDecimal neo = current.add(amount);
-            acc.setBalance(currencyId, neo);
-            if (loggingEnabled) getLogger().info("Deposit (Online): " + playerUuid + " +" + amount + " " + currencyId);
+            // Online player logic (single CAS, no lost updates under concurrent deposits)
+            BigDecimal neo = acc.add(currency, amount);
+            onBalanceChanged(playerUuid, acc, currency);
+            recordFlow(currency, amount);
+            logTransaction(AuditLog.Op.DEPOSIT, false, playerUuid, null, currencyId, amount, neo);
             return neo;
         } else {
-            // Offline player logic (Load -> Modify -> Save)
-            UserAccount offlineAcc = dbManager.loadAccount(playerUuid, getDefaultBalances());
-            BigDecimal current = offlineAcc.getBalance(currencyId);
-            BigDecimal neo = current.add(amount);
-            offlineAcc.setBalance(currencyId, neo);
-            dbManager.saveAccount(playerUuid, offlineAcc); // Immediate save
-            if (loggingEnabled) getLogger().info("Deposit (Offline): " + playerUuid + " +" + amount + " " + currencyId);
+            // Offline player logic (single atomic statement on the DB)
+            awaitPendingSave(playerUuid);
+            BigDecimal neo = storage.depositOffline(playerUuid, currencyId, amount, defaultBalances[currency]);
+            offlineWritten(playerUuid);
+            leaderboards[currency].update(playerUuid, neo);
+            recordFlow(currency, amount);
+            logTransaction(AuditLog.Op.DEPOSIT, true, playerUuid, null, currencyId, amount, neo);
             return neo;
         }
     }
 
     @Override
     public BigDecimal withdraw(UUID playerUuid, String currencyId, BigDecimal amount) {
-        if (amount.compareTo(BigDecimal.ZERO) < 0) throw new IllegalArgumentException("Amount cannot be negative");
+        int currency = requireCurrency(currencyId);
+        checkAmount(currency, amount);
 
-        // Helper interface to avoid code duplication for online/offline
         UserAccount acc = accountCache.get(playerUuid);
         boolean isOffline = (acc == null);
 
+        // Check-and-subtract happens atomically (CAS online, conditional UPDATE offline),
+        // so two withdrawals can't both pass the check
+        BigDecimal neo;
         if (isOffline) {
-            acc = dbManager.loadAccount(playerUuid, getDefaultBalances());
+            awaitPendingSave(playerUuid);
+            neo = storage.withdrawOffline(playerUuid, currencyId, amount, defaultBalances[currency]);
+            if (neo != null) {
+                offlineWritten(playerUuid);
+                leaderboards[currency].update(playerUuid, neo);
+            }
+        } else {
+            neo = acc.tryWithdraw(currency, amount);
+            if (neo != null) onBalanceChanged(playerUuid, acc, currency);
         }
 
-        BigDecimal current = acc.getBalance(currencyId);
-
-        if (current.compareTo(amount) < 0) {
+        if (neo == null) {
             throw new IllegalStateException("Insufficient funds");
         }
+        recordFlow(currency, amount.negate());
 
-        BigDecimal neo = current.subtract(amount);
-        acc.setBalance(currencyId, neo);
-
-        if (isOffline) {
-            dbManager.saveAccount(playerUuid, acc);
-        }
-
-        if (loggingEnabled) getLogger().info("Withdraw (" + (isOffline ? "Offline" : "Online") + "): " + playerUuid + " -" + amount + " " + currencyId);
+        logTransaction(AuditLog.Op.WITHDRAW, isOffline, playerUuid, null, currencyId, amount, neo);
         return neo;
     }
 
     @Override
     public void setBalance(UUID playerUuid, String currencyId, BigDecimal amount) {
-        if (amount.compareTo(BigDecimal.ZERO) < 0) throw new IllegalArgumentException("Amount cannot be negative");
+        int currency = requireCurrency(currencyId);
+        checkAmount(currency, amount);
 
         UserAccount acc = accountCache.get(playerUuid);
         boolean isOffline = (acc == null);
 
+        BigDecimal old;
         if (isOffline) {
-            acc = dbManager.loadAccount(playerUuid, getDefaultBalances());
+            awaitPendingSave(playerUuid);
+            old = storage.setOffline(playerUuid, currencyId, amount);
+            if (old == null) {
+                // The new row replaces the start balance the player had without one
+                old = defaultBalances[currency];
+                telemetry.adjustSupply(currency, old);
+            }
+            offlineWritten(playerUuid);
+            leaderboards[currency].update(playerUuid, amount);
+        } else {
+            old = acc.setBalance(currency, amount);
+            onBalanceChanged(playerUuid, acc, currency);
         }
+        recordFlow(currency, amount.subtract(old));
 
-        acc.setBalance(currencyId, amount);
+        logTransaction(AuditLog.Op.SET, isOffline, playerUuid, null, currencyId, amount, amount);
+    }
 
-        if (isOffline) {
-            dbManager.saveAccount(playerUuid, acc);
+    @Override
+    public PayoutResult depositAll(String currencyId, Collection<UUID> players, BigDecimal amount) {
+        Map<UUID, BigDecimal> amounts = new HashMap<>();
+        for (UUID player : players) amounts.merge(player, amount, BigDecimal::add);
+        return depositAll(currencyId, amounts);
+    }
+
+    @Override
+    public PayoutResult depositAll(String currencyId, Map<UUID, BigDecimal> amounts) {
+        int currency = requireCurrency(currencyId);
+        amounts.values().forEach(amount -> checkAmount(currency, amount));
+
+        Map<UUID, UserAccount> online = new HashMap<>();
+        Map<UUID, BigDecimal> offline = new HashMap<>();
+        amounts.forEach((uuid, amount) -> {
+            UserAccount acc = accountCache.get(uuid);
+            if (acc != null) {
+                online.put(uuid, acc);
+            } else {
+                offline.put(uuid, amount);
+            }
+        });
+
+        Map<UUID, BigDecimal> balances = new ConcurrentHashMap<>();
+        Set<UUID> failed = ConcurrentHashMap.newKeySet();
+
+        // In-memory part: independent CAS cells, so it parallelizes without contention
+        online.entrySet().parallelStream().forEach(entry -> {
+            try {
+                balances.put(entry.getKey(), entry.getValue().add(currency, amounts.get(entry.getKey())));
+                onBalanceChanged(entry.getKey(), entry.getValue(), currency);
+            } catch (ArithmeticException e) {
+                failed.add(entry.getKey());
+            }
+        });
+
+        // Offline part: a few set-based statements for everyone
+        if (!offline.isEmpty()) {
+            offline.keySet().forEach(this::awaitPendingSave);
+            Map<UUID, BigDecimal> settled = storage.depositAllOffline(currencyId, offline, defaultBalances[currency]);
+            balances.putAll(settled);
+            settled.forEach(leaderboards[currency]::update);
+            offline.keySet().forEach(uuid -> {
+                offlineWritten(uuid);
+                if (!settled.containsKey(uuid)) failed.add(uuid);
+            });
+        }
+        balances.forEach((uuid, balance) -> {
+            recordFlow(currency, amounts.get(uuid));
+            logTransaction(AuditLog.Op.DEPOSIT, offline.containsKey(uuid), uuid, null, currencyId, amounts.get(uuid), balance);
+        });
+        return new PayoutResult(Collections.unmodifiableMap(balances), Collections.unmodifiableSet(failed));
+    }
+
+    @Override
+    public void transfer(UUID from, UUID to, String currencyId, BigDecimal amount) {
+        transfer(List.of(new TransferLeg(from, to, currencyId, amount)));
+    }
+
+    @Override
+    public void transfer(List<TransferLeg> legs) {
+        int[] currencies = new int[legs.size()];
+        Set<UUID> players = new HashSet<>();
+        for (int i = 0; i < legs.size(); i++) {
+            TransferLeg leg = legs.get(i);
+            currencies[i] = requireCurrency(leg.currencyId());
+            checkAmount(currencies[i], leg.amount());
+            players.add(leg.from());
+            players.add(leg.to());
+        }
+
+        boolean[] settledOffline;
+        while (true) {
+            // Quit saves take these locks themselves, so wait for them before locking
+            players.forEach(this::awaitPendingSave);
+            int[] stripes = lockPlayers(players);
+            try {
+                // Someone quit in between: their save must land before we touch the DB
+                if (players.stream().anyMatch(pendingQuitSaves::containsKey)) continue;
+                settledOffline = applyTransfer(legs, currencies);
+                for (int currency : currencies) telemetry.onTransaction(currency);
+                break;
+            } finally {
+                unlockPlayers(stripes);
+            }
+        }
+
+        for (int i = 0; i < legs.size(); i++) {
+            TransferLeg leg = legs.get(i);
+            logTransaction(AuditLog.Op.TRANSFER, settledOffline[i], leg.from(), leg.to(), leg.currencyId(), leg.amount(), null);
+        }
+    }
+
+    /**
+     * Applies transfer legs while their players' locks are held (so nobody logs in or out meanwhile).
+     * Order: in-memory withdrawals, then every offline change in one DB transaction, then in-memory
+     * deposits. Only the first two steps can fail, and the in-memory withdrawals are undone if they do.
+     * @return Per leg, whether its payer or receiver was settled in the DB because they are offline.
+     */
+    private boolean[] applyTransfer(List<TransferLeg> legs, int[] currencies) {
+        List<Runnable> undo = new ArrayList<>();
+        List<StorageBackend.OfflineChange> offline = new ArrayList<>();
+        Set<UUID> offlinePlayers = new HashSet<>();
+        // Resolved once: a receiver quitting meanwhile leaves the cache, but their quit save waits
+        // for our stripe locks, so crediting this instance still reaches the database
+        UserAccount[] receivers = new UserAccount[legs.size()];
+        boolean[] settledOffline = new boolean[legs.size()];
+        List<BigDecimal> settled;
+
+        try {
+            for (int i = 0; i < legs.size(); i++) {
+                TransferLeg leg = legs.get(i);
+                int currency = currencies[i];
+                UserAccount payer = accountCache.get(leg.from());
+                if (payer == null) {
+                    offline.add(new StorageBackend.OfflineChange(leg.from(), leg.currencyId(), leg.amount().negate(), defaultBalances[currency]));
+                    offlinePlayers.add(leg.from());
+                    settledOffline[i] = true;
+                    continue;
+                }
+                if (payer.tryWithdraw(currency, leg.amount()) == null) {
+                    throw new IllegalStateException("Insufficient funds");
+                }
+                onBalanceChanged(leg.from(), payer, currency);
+                undo.add(() -> {
+                    payer.add(currency, leg.amount());
+                    onBalanceChanged(leg.from(), payer, currency);
+                });
+            }
+
+            for (int i = 0; i < legs.size(); i++) {
+                TransferLeg leg = legs.get(i);
+                receivers[i] = accountCache.get(leg.to());
+                if (receivers[i] == null) {
+                    offline.add(new StorageBackend.OfflineChange(leg.to(), leg.currencyId(), leg.amount(), defaultBalances[currencies[i]]));
+                    offlinePlayers.add(leg.to());
+                    settledOffline[i] = true;
+                }
+            }
+
+            settled = storage.applyOffline(offline);
+            if (settled == null) {
+                throw new IllegalStateException("Insufficient funds");
+            }
+        } catch (RuntimeException e) {
+            for (int i = undo.size() - 1; i >= 0; i--) undo.get(i).run();
+            throw e;
+        }
+
+        offlinePlayers.forEach(this::offlineWritten);
+        for (int i = 0; i < offline.size(); i++) {
+            StorageBackend.OfflineChange change = offline.get(i);
+            leaderboards[registry.indexOf(change.currencyId())].update(change.uuid(), settled.get(i));
+        }
+
+        for (int i = 0; i < legs.size(); i++) {
+            UserAccount receiver = receivers[i];
+            if (receiver != null) {
+                receiver.add(currencies[i], legs.get(i).amount());
+                onBalanceChanged(legs.get(i).to(), receiver, currencies[i]);
+            }
+        }
+        return settledOffline;
+    }
+
+    /**
+     * Counts an API operation and the money it created (positive) or destroyed (negative).
+     */
+    private void recordFlow(int currency, BigDecimal delta) {
+        telemetry.onTransaction(currency);
+        telemetry.onChange(currency, delta);
+    }
+
+    /**
+     * Hands a completed change to the audit log and the history. Both only queue it.
+     */
+    private void logTransaction(AuditLog.Op op, boolean offline, UUID player, UUID other, String currencyId, BigDecimal amount, BigDecimal balance) {
+        if (auditLog != null) auditLog.record(op, offline, player, other, currencyId, amount, balance);
+        if (history == null) return;
+        switch (op) {
+            case DEPOSIT -> history.record(TransactionRecord.Type.DEPOSIT, player, null, currencyId, amount, balance);
+            case WITHDRAW -> history.record(TransactionRecord.Type.WITHDRAW, player, null, currencyId, amount, balance);
+            case SET -> history.record(TransactionRecord.Type.SET, player, null, currencyId, amount, balance);
+            case TRANSFER -> {
+                history.record(TransactionRecord.Type.TRANSFER_OUT, player, other, currencyId, amount, null);
+                history.record(TransactionRecord.Type.TRANSFER_IN, other, player, currencyId, amount, null);
+            }
+        }
+    }
+
+    /**
+     * Called after every change to an in-memory balance.
+     */
+    private void onBalanceChanged(UUID playerUuid, UserAccount acc, int currency) {
+        if (journal != null) journal.recordBalance(playerUuid, acc, currency);
+        Leaderboard leaderboard = leaderboards[currency];
+        leaderboard.update(playerUuid, acc, currency);
+        if (leaderboard.needsSeed()) {
+            try {
+                ioExecutor.execute(() -> seedLeaderboard(currency));
+            } catch (RejectedExecutionException e) {
+                // Shutting down; the board is seeded again on the next start
+            }
+        }
+    }
+
+    /**
+     * A save merged a change another server of the network made to this player.
+     */
+    @Override
+    public void onRemoteChange(UUID playerUuid, UserAccount acc, int currency, BigDecimal delta) {
+        // May run during the final save on shutdown, so nothing is scheduled from here
+        if (journal != null) journal.recordBalance(playerUuid, acc, currency);
+        leaderboards[currency].update(playerUuid, acc, currency);
+        telemetry.adjustSupply(currency, delta);
+    }
+
+    /**
+     * Start balances only count toward the supply once a row holds them, like the sum it was seeded from.
+     */
+    @Override
+    public void onRowsCreated(String currencyId, BigDecimal startBalances) {
+        int currency = registry.indexOf(currencyId);
+        if (currency != CurrencyRegistry.UNKNOWN) telemetry.adjustSupply(currency, startBalances);
+    }
+
+    /**
+     * Refills a leaderboard from the DB, with the in-memory balances of online players on top.
+     */
+    private void seedLeaderboard(int currency) {
+        Leaderboard leaderboard = leaderboards[currency];
+        if (!leaderboard.beginSeed()) return;
+        try {
+            Map<UUID, BigDecimal> rows = storage.loadTop(registry.idOf(currency), leaderboard.getSeedLimit());
+            Map<UUID, BigDecimal> live = new HashMap<>();
+            accountCache.forEach((uuid, acc) -> live.put(uuid, acc.getBalance(currency)));
+            leaderboard.finishSeed(rows, live);
+        } catch (RuntimeException e) {
+            leaderboard.cancelSeed();
+            getLogger().log(Level.WARNING, "Could not seed the leaderboard of " + registry.idOf(currency), e);
         }
+    }
 
-        if (loggingEnabled) getLogger().info("Set (" + (isOffline ? "Offline" : "Online") + "): " + playerUuid + " = " + amount + " " + currencyId);
+    /**
+     * Locks the stripes of the given players in ascending order, so concurrent callers can't deadlock.
+     * @return The locked stripes, to pass to {@link #unlockPlayers(int[])}.
+     */
+    private int[] lockPlayers(Collection<UUID> players) {
+        int[] stripes = players.stream()
+                .mapToInt(this::stripeOf)
+                .distinct().sorted().toArray();
+        for (int stripe : stripes) playerLocks[stripe].lock();
+        return stripes;
+    }
+
+    private void unlockPlayers(int[] stripes) {
+        for (int i = stripes.length - 1; i >= 0; i--) playerLocks[stripes[i]].unlock();
+    }
+
+    private int stripeOf(UUID playerUuid) {
+        return Math.floorMod(playerUuid.hashCode(), playerLocks.length);
+    }
+
+    /**
+     * Call after writing a player's balances straight to the database: drops the stale cached copy
+     * and makes a login load running meanwhile start over.
+     */
+    private void offlineWritten(UUID playerUuid) {
+        offlineWrites.incrementAndGet(stripeOf(playerUuid));
+        offlineCache.invalidate(playerUuid);
+    }
+
+    /**
+     * Read-only view of an offline account, served from the offline cache when possible.
+     * Mutations must not go through the returned object.
+     */
+    private UserAccount getOfflineAccount(UUID playerUuid) {
+        UserAccount cached = offlineCache.get(playerUuid);
+        if (cached != null) return cached;
+
+        // Cache miss (synchronous load)
+        int stripe = stripeOf(playerUuid);
+        long writes = offlineWrites.get(stripe);
+        UserAccount loaded = storage.loadAccount(playerUuid, getDefaultBalances());
+        // An offline write that landed after the load read the rows already invalidated, so the copy isn't cached
+        if (offlineWrites.get(stripe) == writes) {
+            offlineCache.put(playerUuid, loaded);
+            // One landing right before the put may have invalidated first
+            if (offlineWrites.get(stripe) != writes) offlineCache.invalidate(playerUuid, loaded);
+        }
+        return loaded;
+    }
+
+    @Override
+    public List<LeaderboardEntry> getTopBalances(String currencyId, int offset, int count) {
+        return leaderboards[requireCurrency(currencyId)].getTop(Math.max(0, offset), Math.max(0, count));
+    }
+
+    @Override
+    public List<TransactionRecord> getHistory(UUID playerUuid, String currencyId, long beforeId, int limit) {
+        if (currencyId != null) requireCurrency(currencyId);
+        if (history == null) return List.of();
+        return history.query(playerUuid, currencyId, beforeId, Math.max(1, Math.min(MAX_HISTORY_PAGE, limit)));
     }
 
     @Override
     public double getInputPerSecond(UUID playerUuid, String currencyId) {
+        int currency = registry.indexOf(currencyId);
         UserAccount acc = accountCache.get(playerUuid);
-        // Divided by 5 because the window is 5s
-        return acc != null ? acc.getInputRate(currencyId) / 5.0 : 0.0;
+        return acc != null && currency != CurrencyRegistry.UNKNOWN ? acc.getInputRate(currency) : 0.0;
     }
 
     @Override
     public double getOutputPerSecond(UUID playerUuid, String currencyId) {
+        int currency = registry.indexOf(currencyId);
         UserAccount acc = accountCache.get(playerUuid);
-        return acc != null ? acc.getOutputRate(currencyId) / 5.0 : 0.0;
+        return acc != null && currency != CurrencyRegistry.UNKNOWN ? acc.getOutputRate(currency) : 0.0;
     }
 
     @Override
     public String format(String currencyId, BigDecimal amount) {
-        CurrencyConfig conf = currencyConfigs.get(currencyId);
-        if (conf == null) return amount.toString();
-        return conf.symbol + new DecimalFormat(conf.formatPattern).format(amount);
+        int currency = registry.indexOf(currencyId);
+        if (currency == CurrencyRegistry.UNKNOWN) return amount.toString();
+        return formatters[currency].format(amount);
+    }
+
+    /**
+     * Formats a player's balance. For online players the text is reused until the balance changes.
+     */
+    private String formatBalance(UUID playerUuid, int currency) {
+        UserAccount acc = accountCache.get(playerUuid);
+        if (acc == null) return formatters[currency].format(getBalance(playerUuid, registry.idOf(currency)));
+        return formatBalance(acc, currency);
+    }
+
+    private String formatBalance(UserAccount acc, int currency) {
+        return cacheFormatted ? acc.format(currency, formatters[currency]) : acc.formatUncached(currency, formatters[currency]);
+    }
+
+    /**
+     * The currency /money shows: "money" if it is configured, otherwise the first one.
+     * @return UNKNOWN if no currency is configured.
+     */
+    private int moneyCurrency() {
+        int money = registry.indexOf("money");
+        return money != CurrencyRegistry.UNKNOWN || registry.size() == 0 ? money : 0;
+    }
+
+    // --- Async API ---
+
+    private class AsyncEconomy implements AsyncEconomyAPI {
+
+        @Override
+        public CompletableFuture<BigDecimal> getBalance(UUID playerUuid, String currencyId) {
+            if (accountCache.containsKey(playerUuid) || offlineCache.get(playerUuid) != null) {
+                return completeNow(() -> getAPI().getBalance(playerUuid, currencyId));
+            }
+            return CompletableFuture.supplyAsync(() -> getAPI().getBalance(playerUuid, currencyId), ioExecutor);
+        }
+
+        @Override
+        public CompletableFuture<BigDecimal> deposit(UUID playerUuid, String currencyId, BigDecimal amount) {
+            return dispatch(playerUuid, () -> getAPI().deposit(playerUuid, currencyId, amount));
+        }
+
+        @Override
+        public CompletableFuture<BigDecimal> withdraw(UUID playerUuid, String currencyId, BigDecimal amount) {
+            return dispatch(playerUuid, () -> getAPI().withdraw(playerUuid, currencyId, amount));
+        }
+
+        @Override
+        public CompletableFuture<Void> setBalance(UUID playerUuid, String currencyId, BigDecimal amount) {
+            return dispatch(playerUuid, () -> {
+                getAPI().setBalance(playerUuid, currencyId, amount);
+                return null;
+            });
+        }
+
+        @Override
+        public CompletableFuture<PayoutResult> depositAll(String currencyId, Map<UUID, BigDecimal> amounts) {
+            return CompletableFuture.supplyAsync(() -> getAPI().depositAll(currencyId, amounts), ioExecutor);
+        }
+
+        @Override
+        public CompletableFuture<PayoutResult> depositAll(String currencyId, Collection<UUID> players, BigDecimal amount) {
+            return CompletableFuture.supplyAsync(() -> getAPI().depositAll(currencyId, players, amount), ioExecutor);
+        }
+
+        @Override
+        public CompletableFuture<Void> transfer(UUID from, UUID to, String currencyId, BigDecimal amount) {
+            return transfer(List.of(new TransferLeg(from, to, currencyId, amount)));
+        }
+
+        @Override
+        public CompletableFuture<Void> transfer(List<TransferLeg> legs) {
+            // Locking is involved, so always off the caller's thread
+            return CompletableFuture.runAsync(() -> getAPI().transfer(legs), ioExecutor);
+        }
+
+        @Override
+        public CompletableFuture<List<TransactionRecord>> getHistory(UUID playerUuid, String currencyId, long beforeId, int limit) {
+            return CompletableFuture.supplyAsync(() -> getAPI().getHistory(playerUuid, currencyId, beforeId, limit), ioExecutor);
+        }
+
+        // Online players are pure in-memory CAS work, so running it inline is cheaper than a hand-off
+        private <T> CompletableFuture<T> dispatch(UUID playerUuid, Supplier<T> operation) {
+            if (accountCache.containsKey(playerUuid)) {
+                return completeNow(operation);
+            }
+            return CompletableFuture.supplyAsync(operation, ioExecutor);
+        }
+
+        private <T> CompletableFuture<T> completeNow(Supplier<T> operation) {
+            try {
+                return CompletableFuture.completedFuture(operation.get());
+            } catch (RuntimeException e) {
+                return CompletableFuture.failedFuture(e);
+            }
+        }
     }
 
     // --- Listeners ---
@@ -243,9 +1018,37 @@ public class vEconomy extends JavaPlugin implements Listener, vEconomyAPI {
     @EventHandler(priority = EventPriority.LOWEST)
     public void onPreLogin(AsyncPlayerPreLoginEvent event) {
         // Asynchronous blocking load (safe in this event)
+        UUID uuid = event.getUniqueId();
+        int stripe = stripeOf(uuid);
         try {
-            UserAccount acc = dbManager.loadAccount(event.getUniqueId(), getDefaultBalances());
-            accountCache.put(event.getUniqueId(), acc);
+            UserAccount acc = null;
+            for (int attempt = 1; acc == null; attempt++) {
+                awaitPendingSave(uuid);
+                long writes = offlineWrites.get(stripe);
+                // Only fall back to loading under the lock if offline writes to this stripe keep racing the load
+                boolean locked = attempt >= LOGIN_LOAD_ATTEMPTS;
+                int[] stripes = locked ? lockPlayers(List.of(uuid)) : null;
+                try {
+                    // Always load fresh: another server may have changed the balance since it was cached
+                    offlineCache.invalidate(uuid);
+                    UserAccount loaded = loginLoader != null
+                            ? loginLoader.load(uuid).join()
+                            : storage.loadAccount(uuid, getDefaultBalances());
+                    if (!locked) {
+                        stripes = lockPlayers(List.of(uuid));
+                        // A quit save or an offline write may have landed after the load read the rows
+                        if (pendingQuitSaves.containsKey(uuid) || offlineWrites.get(stripe) != writes) continue;
+                    }
+                    // Before anyone can change it, so its changes replay on top of the stored balances
+                    if (journal != null) journal.recordLoaded(uuid, loaded);
+                    // A login that got here first already serves this player and may have changed since
+                    UserAccount current = accountCache.putIfAbsent(uuid, loaded);
+                    acc = current != null ? current : loaded;
+                } finally {
+                    if (stripes != null) unlockPlayers(stripes);
+                }
+            }
+            nameIndex.record(uuid, event.getName());
         } catch (Exception e) {
             getLogger().log(Level.SEVERE, "Error loading data for " + event.getName(), e);
             event.disallow(AsyncPlayerPreLoginEvent.Result.KICK_OTHER, "Critical error loading economy data.");
@@ -255,16 +1058,41 @@ public class vEconomy extends JavaPlugin implements Listener, vEconomyAPI {
     @EventHandler
     public void onQuit(PlayerQuitEvent event) {
         UUID uuid = event.getPlayer().getUniqueId();
-        UserAccount acc = accountCache.remove(uuid);
+        UserAccount acc = accountCache.get(uuid);
         if (acc != null) {
-            // Save async to not block main thread on quit
-            CompletableFuture.runAsync(() -> dbManager.saveAccount(uuid, acc));
+            // Registered before the account leaves the cache, so nobody sees the player offline
+            // with the save not yet visible to them
+            CompletableFuture<Void> save = new CompletableFuture<>();
+            pendingQuitSaves.put(uuid, save);
+            accountCache.remove(uuid);
+
+            // The in-memory state is the newest there is, keep serving reads from it
+            offlineCache.put(uuid, acc);
+
+            // Save async to not block main thread on quit. The player lock lets a running
+            // transfer finish its in-memory part first, so the save includes it.
+            ioExecutor.execute(() -> {
+                int[] stripes = lockPlayers(List.of(uuid));
+                try {
+                    storage.saveAccount(uuid, acc);
+                } finally {
+                    unlockPlayers(stripes);
+                    pendingQuitSaves.remove(uuid, save);
+                    save.complete(null);
+                }
+            });
         }
     }
 
     // --- Placeholders ---
 
     private class EconomyExpansion extends PlaceholderExpansion {
+        private static final int MAX_PARSED = 4096;
+        private static final CurrencyFormatter RATE_FORMAT = new CurrencyFormatter("", "0.00/s");
+
+        private final Map<String, Placeholder> parsed = new ConcurrentHashMap<>();
+        private final Set<UUID> loading = ConcurrentHashMap.newKeySet();
+
         @Override
         public @NotNull String getIdentifier() { return "veconomy"; }
         @Override
@@ -276,30 +1104,80 @@ public class vEconomy extends JavaPlugin implements Listener, vEconomyAPI {
 
         @Override
         public String onPlaceholderRequest(Player player, @NotNull String params) {
-            if (player == null) return "";
-
-            // params: <currency>_balance, <currency>_input, <currency>_output
-            String[] parts = params.split("_");
-            if (parts.length < 2) return null;
+            Placeholder placeholder = parsed.get(params);
+            if (placeholder == null) {
+                placeholder = Placeholder.parse(registry, params);
+                // Params come from configs, so this stays small; the cap only guards against junk
+                if (parsed.size() < MAX_PARSED) parsed.put(params, placeholder);
+            }
+            if (placeholder == Placeholder.INVALID) return null;
+
+            int currency = placeholder.currency();
+            // Leaderboard placeholders don't depend on the viewer
+            if (placeholder.kind() == Placeholder.Kind.TOP_NAME || placeholder.kind() == Placeholder.Kind.TOP_AMOUNT) {
+                LeaderboardEntry entry = leaderboards[currency].get(placeholder.rank());
+                if (entry == null) return "---";
+                if (placeholder.kind() == Placeholder.Kind.TOP_AMOUNT) return formatters[currency].format(entry.balance());
+                return entry.name() != null ? entry.name() : "---";
+            }
 
-            String currency = parts[0];
-            String type = parts[1];
+            if (player == null) return "";
+            UUID uuid = player.getUniqueId();
+            if (placeholder.kind() == Placeholder.Kind.RANK) {
+                int rank = leaderboards[currency].getRank(uuid);
+                return rank > 0 ? Integer.toString(rank) : "---";
+            }
 
-            if (!currencyConfigs.containsKey(currency)) return null;
+            // Only in-memory state: this runs on the render thread
+            UserAccount acc = accountCache.get(uuid);
+            if (acc == null) acc = offlineCache.get(uuid);
+            if (acc == null) {
+                requestLoad(uuid);
+                return "...";
+            }
 
-            return switch (type) {
-                case "balance" -> format(currency, getBalance(player.getUniqueId(), currency));
-                case "input" -> String.format("%.2f/s", getInputPerSecond(player.getUniqueId(), currency));
-                case "output" -> String.format("%.2f/s", getOutputPerSecond(player.getUniqueId(), currency));
-                case "raw" -> getBalance(player.getUniqueId(), currency).toPlainString();
+            return switch (placeholder.kind()) {
+                case BALANCE -> formatBalance(acc, currency);
+                case RAW -> acc.getBalance(currency).toPlainString();
+                case INPUT -> RATE_FORMAT.format(Math.round(acc.getInputRate(currency) * 100), 2);
+                case OUTPUT -> RATE_FORMAT.format(Math.round(acc.getOutputRate(currency) * 100), 2);
+                case NET -> RATE_FORMAT.format(Math.round((acc.getInputRate(currency) - acc.getOutputRate(currency)) * 100), 2);
                 default -> null;
             };
         }
+
+        // A player without a loaded account (e.g. while joining) is fetched in the background
+        private void requestLoad(UUID uuid) {
+            if (!loading.add(uuid)) return;
+            try {
+                ioExecutor.execute(() -> {
+                    try {
+                        getOfflineAccount(uuid);
+                    } catch (RuntimeException e) {
+                        getLogger().log(Level.WARNING, "Could not load balance for placeholder: " + uuid, e);
+                    } finally {
+                        loading.remove(uuid);
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                loading.remove(uuid); // Shutting down
+            }
+        }
     }
 
     // --- Commands ---
 
-    private class EconomyCommand implements CommandExecutor {
+    private class EconomyCommand implements TabExecutor {
+        private static final int TOP_PAGE_SIZE = 10;
+        private static final int MAX_COMPLETIONS = 50;
+        private static final List<String> ADMIN_COMMANDS = List.of("give", "take", "set", "wipe", "history", "top", "stats", "migrate");
+        private static final int HISTORY_PAGE_SIZE = 10;
+        private static final int MAX_HISTORY_CURSORS = 256;
+        private static final DateTimeFormatter HISTORY_TIME = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss").withZone(ZoneId.systemDefault());
+
+        // Page start ids per viewer and player, see historyPage()
+        private final Map<String, List<Long>> historyCursors = new ConcurrentHashMap<>();
+
         @Override
         public boolean onCommand(@NotNull CommandSender sender, @NotNull Command command, @NotNull String label, @NotNull String[] args) {
             try {
@@ -310,34 +1188,71 @@ public class vEconomy extends JavaPlugin implements Listener, vEconomyAPI {
                         return true;
                     }
 
+                    int currency = moneyCurrency();
+                    if (currency == CurrencyRegistry.UNKNOWN) {
+                        sender.sendMessage("§cNo currency is configured.");
+                        return true;
+                    }
+
                     if (args.length == 0) {
                         if (!(sender instanceof Player player)) {
                             sender.sendMessage("§cOnly players can use this command without arguments.");
                             return true;
                         }
-                        sender.sendMessage("§aCurrent balance: " + format("money", getBalance(player.getUniqueId(), "money")));
+                        sender.sendMessage("§aCurrent balance: " + formatBalance(player.getUniqueId(), currency));
                         return true;
                     } else {
                         // Check other player's balance (Async to support offline lookup)
                         String targetName = args[0];
                         CompletableFuture.runAsync(() -> {
-                            // Deprecated method but necessary for name->uuid lookup.
-                            // In production, consider caching names or using a proxy API.
-                            OfflinePlayer target = Bukkit.getOfflinePlayer(targetName);
-
-                            // Check if player actually exists in server history or is online
-                            if (!target.hasPlayedBefore() && !target.isOnline()) {
+                            StorageBackend.StoredName target = nameIndex.resolve(targetName);
+                            if (target == null) {
                                 sender.sendMessage("§cPlayer never played before.");
                                 return;
                             }
 
-                            BigDecimal bal = getBalance(target.getUniqueId(), "money");
-                            sender.sendMessage("§aBalance of " + target.getName() + ": " + format("money", bal));
-                        });
+                            sender.sendMessage("§aBalance of " + target.name() + ": " + formatBalance(target.uuid(), currency));
+                        }, ioExecutor);
                         return true;
                     }
                 }
 
+                // Command: /veconomy top <currency> [page] (served from memory, open to players)
+                if (args.length > 0 && args[0].equalsIgnoreCase("top")) {
+                    if (!sender.hasPermission("vEconomy.top")) {
+                        sender.sendMessage(getConfig().getString("messages.no_permission", "§cNo Permission.").replace("&", "§"));
+                        return true;
+                    }
+                    if (args.length < 2) {
+                        sender.sendMessage("§cUsage: /veco top <currency> [page]");
+                        return true;
+                    }
+                    String currencyID = args[1];
+                    if (!currencyExists(currencyID)) {
+                        sender.sendMessage("§cCurrency '" + currencyID + "' does not exist.");
+                        return true;
+                    }
+                    int page;
+                    try {
+                        page = args.length > 2 ? Math.max(1, Integer.parseInt(args[2])) : 1;
+                    } catch (NumberFormatException e) {
+                        sender.sendMessage("§cInvalid page number.");
+                        return true;
+                    }
+
+                    List<LeaderboardEntry> entries = getTopBalances(currencyID, (page - 1) * TOP_PAGE_SIZE, TOP_PAGE_SIZE);
+                    if (entries.isEmpty()) {
+                        sender.sendMessage("§cNo entries on page " + page + ".");
+                        return true;
+                    }
+                    sender.sendMessage("§bTop " + currencyConfigs.get(currencyID).name() + " §7- Page " + page);
+                    for (LeaderboardEntry entry : entries) {
+                        String name = entry.name() != null ? entry.name() : entry.uuid().toString();
+                        sender.sendMessage("§7" + entry.rank() + ". §f" + name + " §7- §a" + format(currencyID, entry.balance()));
+                    }
+                    return true;
+                }
+
                 // Command: /veconomy ...
                 if (!sender.hasPermission("vEconomy.admin")) {
                     sender.sendMessage(getConfig().getString("messages.no_permission", "§cNo Permission.").replace("&", "§"));
@@ -345,12 +1260,92 @@ public class vEconomy extends JavaPlugin implements Listener, vEconomyAPI {
                 }
 
                 if (args.length == 0) {
-                    sender.sendMessage("§bvEconomy §7- Usage: /veco [give/take/set/wipe]");
+                    sender.sendMessage("§bvEconomy §7- Usage: /veco [give/take/set/wipe/history/top/stats/migrate]");
                     return true;
                 }
 
                 String subCmd = args[0].toLowerCase();
 
+                if (subCmd.equals("stats")) {
+                    sender.sendMessage("§bvEconomy §7- Telemetry");
+                    for (int i = 0; i < registry.size(); i++) {
+                        sender.sendMessage(String.format("§e%s§7: supply %.2f, faucet %.2f/s, sink %.2f/s, %d transactions",
+                                registry.idOf(i), telemetry.getSupply(i), telemetry.getFaucetPerSecond(i),
+                                telemetry.getSinkPerSecond(i), telemetry.getTransactionCount(i)));
+                    }
+                    telemetry.getHistograms().forEach((name, histogram) -> sender.sendMessage(String.format(
+                            "§7%s: %d calls, p50 %.0fµs, p99 %.0fµs", name, histogram.getCount(),
+                            histogram.getPercentileMicros(0.50), histogram.getPercentileMicros(0.99))));
+                    Telemetry.PoolStats pool = telemetry.getPoolStats();
+                    sender.sendMessage("§7Pool: " + pool.active() + " active, " + pool.idle() + " idle, "
+                            + pool.waiting() + " waiting");
+                    if (auditLog != null) {
+                        sender.sendMessage("§7Transaction log: " + auditLog.getWritten() + " written, " + auditLog.getDropped() + " dropped");
+                    }
+                    if (history != null) sender.sendMessage("§7Transaction history: " + history.getDropped() + " dropped");
+                    return true;
+                }
+
+                if (subCmd.equals("migrate")) {
+                    String current = getConfig().getString("database.preferred_db", "MariaDB");
+                    // MariaDB and MySQL share the connection settings, so only H2 <-> server makes sense
+                    if (args.length < 2 || args[1].equalsIgnoreCase("h2") == current.equalsIgnoreCase("h2")) {
+                        sender.sendMessage("§cUsage: /veco migrate <MariaDB/MySQL/H2> (copies from " + current + ")");
+                        return true;
+                    }
+                    String targetType = args[1];
+                    sender.sendMessage("§7Copying balances and history from " + current + " to " + targetType + "...");
+                    CompletableFuture.runAsync(() -> {
+                        try {
+                            long[] copied = migrateTo(targetType);
+                            sender.sendMessage("§aCopied " + copied[0] + " balances and " + copied[1] + " history records. Set preferred_db to " + targetType + " and restart.");
+                        } catch (RuntimeException e) {
+                            getLogger().log(Level.SEVERE, "Migration to " + targetType + " failed", e);
+                            sender.sendMessage("§cMigration failed: " + e.getMessage());
+                        }
+                    }, ioExecutor);
+                    return true;
+                }
+
+                if (subCmd.equals("history")) {
+                    if (args.length < 2) {
+                        sender.sendMessage("§cUsage: /veco history <player> [page]");
+                        return true;
+                    }
+                    if (history == null) {
+                        sender.sendMessage("§cThe transaction history is disabled.");
+                        return true;
+                    }
+                    String targetName = args[1];
+                    int page;
+                    try {
+                        page = args.length > 2 ? Math.max(1, Integer.parseInt(args[2])) : 1;
+                    } catch (NumberFormatException e) {
+                        sender.sendMessage("§cInvalid page number.");
+                        return true;
+                    }
+                    CompletableFuture.runAsync(() -> {
+                        try {
+                            StorageBackend.StoredName target = nameIndex.resolve(targetName);
+                            if (target == null) {
+                                sender.sendMessage("§cPlayer not found.");
+                                return;
+                            }
+                            List<TransactionRecord> records = historyPage(sender.getName(), target.uuid(), page);
+                            if (records.isEmpty()) {
+                                sender.sendMessage("§cNo entries on page " + page + ".");
+                                return;
+                            }
+                            sender.sendMessage("§bHistory of " + target.name() + " §7- Page " + page);
+                            for (TransactionRecord record : records) sender.sendMessage(describe(record));
+                        } catch (RuntimeException e) {
+                            getLogger().log(Level.SEVERE, "History lookup failed", e);
+                            sender.sendMessage("§cAn internal error occurred.");
+                        }
+                    }, ioExecutor);
+                    return true;
+                }
+
                 if (subCmd.equals("wipe")) {
                     if (args.length < 2) {
                         sender.sendMessage("§cUsage: /veco wipe <player>");
@@ -358,15 +1353,19 @@ public class vEconomy extends JavaPlugin implements Listener, vEconomyAPI {
                     }
                     String targetName = args[1];
                     CompletableFuture.runAsync(() -> {
-                        OfflinePlayer target = Bukkit.getOfflinePlayer(targetName);
-                        if (target.hasPlayedBefore() || target.isOnline()) {
-                            accountCache.remove(target.getUniqueId()); // Remove from cache
-                            dbManager.wipeUser(target.getUniqueId()); // Remove from DB
+                        StorageBackend.StoredName target = nameIndex.resolve(targetName);
+                        if (target != null) {
+                            UserAccount removed = accountCache.remove(target.uuid()); // Remove from cache
+                            // Its journaled balances must not come back on a crash recovery
+                            if (removed != null && journal != null) journal.recordSaved(target.uuid(), removed, removed.collectDirty());
+                            storage.wipeUser(target.uuid()); // Remove from DB
+                            offlineWritten(target.uuid());
+                            for (Leaderboard leaderboard : leaderboards) leaderboard.remove(target.uuid());
                             sender.sendMessage("§aUser " + targetName + " deleted from database.");
                         } else {
                             sender.sendMessage("§cPlayer not found.");
                         }
-                    });
+                    }, ioExecutor);
                     return true;
                 }
 
@@ -388,42 +1387,43 @@ public class vEconomy extends JavaPlugin implements Listener, vEconomyAPI {
                 CompletableFuture.runAsync(() -> {
                     try {
                         BigDecimal amount = new BigDecimal(amountStr);
-                        OfflinePlayer target = Bukkit.getOfflinePlayer(targetName);
-
-                        if (!target.hasPlayedBefore() && !target.isOnline()) {
+                        StorageBackend.StoredName target = nameIndex.resolve(targetName);
+                        if (target == null) {
                             sender.sendMessage("§cPlayer never played on this server.");
                             return;
                         }
 
                         switch (subCmd) {
                             case "give" -> {
-                                BigDecimal newBal = deposit(target.getUniqueId(), currencyID, amount);
-                                sender.sendMessage("§aAdded " + format(currencyID, amount) + " to " + target.getName() + ". New: " + format(currencyID, newBal));
+                                BigDecimal newBal = deposit(target.uuid(), currencyID, amount);
+                                sender.sendMessage("§aAdded " + format(currencyID, amount) + " to " + target.name() + ". New: " + format(currencyID, newBal));
                             }
                             case "take" -> {
                                 try {
-                                    BigDecimal newBal = withdraw(target.getUniqueId(), currencyID, amount);
-                                    sender.sendMessage("§aRemoved " + format(currencyID, amount) + " from " + target.getName() + ". New: " + format(currencyID, newBal));
+                                    BigDecimal newBal = withdraw(target.uuid(), currencyID, amount);
+                                    sender.sendMessage("§aRemoved " + format(currencyID, amount) + " from " + target.name() + ". New: " + format(currencyID, newBal));
                                 } catch (IllegalStateException e) {
                                     sender.sendMessage("§cError: Player has insufficient funds.");
                                 }
                             }
                             case "set" -> {
-                                setBalance(target.getUniqueId(), currencyID, amount);
-                                sender.sendMessage("§aSet balance of " + target.getName() + " to " + format(currencyID, amount));
+                                setBalance(target.uuid(), currencyID, amount);
+                                sender.sendMessage("§aSet balance of " + target.name() + " to " + format(currencyID, amount));
                             }
                             default -> sender.sendMessage("§cUnknown subcommand.");
                         }
 
                     } catch (NumberFormatException e) {
                         sender.sendMessage("§cInvalid number format.");
+                    } catch (ArithmeticException e) {
+                        sender.sendMessage("§cError: Balance would exceed the maximum supported value.");
                     } catch (IllegalArgumentException e) {
                         sender.sendMessage("§cError: " + e.getMessage());
                     } catch (Exception e) {
                         getLogger().log(Level.SEVERE, "Command error", e);
                         sender.sendMessage("§cAn internal error occurred.");
                     }
-                });
+                }, ioExecutor);
 
             } catch (Exception e) {
                 getLogger().log(Level.SEVERE, "Unexpected command exception", e);
@@ -431,5 +1431,76 @@ public class vEconomy extends JavaPlugin implements Listener, vEconomyAPI {
             }
             return true;
         }
+        // Player names come from the name index only, completing never touches Bukkit's player data
+        @Override
+        public List<String> onTabComplete(@NotNull CommandSender sender, @NotNull Command command, @NotNull String label, @NotNull String[] args) {
+            String last = args.length > 0 ? args[args.length - 1] : "";
+            if (command.getName().equalsIgnoreCase("money")) {
+                return args.length == 1 && sender.hasPermission("vEconomy.balance") ? nameIndex.complete(last, MAX_COMPLETIONS) : List.of();
+            }
+
+            boolean admin = sender.hasPermission("vEconomy.admin");
+            if (args.length == 1) {
+                return matching(admin ? ADMIN_COMMANDS : sender.hasPermission("vEconomy.top") ? List.of("top") : List.of(), last);
+            }
+            String subCmd = args[0].toLowerCase();
+            if (subCmd.equals("top")) {
+                return args.length == 2 && sender.hasPermission("vEconomy.top") ? matching(registry.ids(), last) : List.of();
+            }
+            if (!admin) return List.of();
+            return switch (subCmd) {
+                case "give", "take", "set" -> args.length == 2 ? nameIndex.complete(last, MAX_COMPLETIONS)
+                        : args.length == 3 ? matching(registry.ids(), last) : List.of();
+                case "wipe", "history" -> args.length == 2 ? nameIndex.complete(last, MAX_COMPLETIONS) : List.of();
+                case "migrate" -> args.length == 2 ? matching(List.of("MariaDB", "MySQL", "H2"), last) : List.of();
+                default -> List.of();
+            };
+        }
+
+        /**
+         * Pages are keyset-paginated, so page n needs the last id of page n-1. The id each page
+         * starts before is remembered per viewer and player; an unknown page is reached by
+         * seeking forward from the nearest known one.
+         */
+        private List<TransactionRecord> historyPage(String viewer, UUID player, int page) {
+            if (historyCursors.size() > MAX_HISTORY_CURSORS) historyCursors.clear();
+            List<Long> cursors = historyCursors.computeIfAbsent(viewer + "/" + player,
+                    key -> Collections.synchronizedList(new ArrayList<>(List.of(Long.MAX_VALUE))));
+            synchronized (cursors) {
+                // Page 1 always starts at the newest row, new transactions shift every later page
+                if (page == 1) cursors.subList(1, cursors.size()).clear();
+                while (true) {
+                    int known = Math.min(page, cursors.size());
+                    List<TransactionRecord> records = history.query(player, null, cursors.get(known - 1), HISTORY_PAGE_SIZE);
+                    if (known == page) {
+                        if (records.size() == HISTORY_PAGE_SIZE && cursors.size() == page) cursors.add(records.get(records.size() - 1).id());
+                        return records;
+                    }
+                    if (records.size() < HISTORY_PAGE_SIZE) return List.of();
+                    cursors.add(records.get(records.size() - 1).id());
+                }
+            }
+        }
+
+        private String describe(TransactionRecord record) {
+            String line = "§7" + HISTORY_TIME.format(Instant.ofEpochMilli(record.time()))
+                    + " §e" + record.type().name().toLowerCase(Locale.ROOT).replace('_', ' ')
+                    + " §f" + format(record.currencyId(), record.amount());
+            if (record.counterparty() != null) {
+                String name = nameIndex.getName(record.counterparty());
+                line += (record.type() == TransactionRecord.Type.TRANSFER_OUT ? " §7to " : " §7from ")
+                        + (name != null ? name : record.counterparty().toString());
+            }
+            if (record.balance() != null) line += " §7-> " + format(record.currencyId(), record.balance());
+            return line;
+        }
+
+        private static List<String> matching(Collection<String> options, String prefix) {
+            List<String> matches = new ArrayList<>();
+            for (String option : options) {
+                if (option.regionMatches(true, 0, prefix, 0, prefix.length())) matches.add(option);
+            }
+            return matches;
+        }
     }
 }
\ No newline at end of file
@@ -0,0 +1,163 @@
+package com.vitor;
+
+import com.vitor.api.TransferLeg;
+import net.kyori.adventure.text.Component;
+import org.bukkit.event.player.AsyncPlayerPreLoginEvent;
+import org.bukkit.event.player.PlayerQuitEvent;
+import org.bukkit.plugin.InvalidDescriptionException;
+import org.bukkit.plugin.PluginDescriptionFile;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockbukkit.mockbukkit.MockBukkit;
+import org.mockbukkit.mockbukkit.ServerMock;
+import org.mockbukkit.mockbukkit.entity.PlayerMock;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringReader;
+import java.math.BigDecimal;
+import java.net.InetAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+import java.util.Objects;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Transfers through the whole plugin on a mock server, with the embedded H2 backend.
+ */
+class TransferTest {
+
+    private static final BigDecimal START = new BigDecimal("100");
+
+    private ServerMock server;
+    private TestEconomy plugin;
+
+    /**
+     * The plugin with the test configuration, and a hook that stops a transfer right after its
+     * offline changes were committed, before the online receivers are credited.
+     */
+    public static class TestEconomy extends vEconomy {
+        volatile boolean pause;
+        final CountDownLatch paused = new CountDownLatch(1);
+        final CountDownLatch resume = new CountDownLatch(1);
+
+        @Override
+        public void saveDefaultConfig() {
+            File target = new File(getDataFolder(), "config.yml");
+            if (target.exists()) return;
+            try (InputStream in = Objects.requireNonNull(TransferTest.class.getResourceAsStream("/vEconomy-test.yml"))) {
+                Files.createDirectories(getDataFolder().toPath());
+                Files.copy(in, target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        @Override
+        public void onRowsCreated(String currencyId, BigDecimal startBalances) {
+            super.onRowsCreated(currencyId, startBalances);
+            if (!pause) return;
+            paused.countDown();
+            try {
+                resume.await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    @BeforeEach
+    void setUp() throws IOException, InvalidDescriptionException {
+        server = MockBukkit.mock();
+        plugin = MockBukkit.loadWith(TestEconomy.class, description());
+    }
+
+    @AfterEach
+    void tearDown() {
+        MockBukkit.unmock();
+    }
+
+    @Test
+    void failedOfflineLegRollsBackTheOnlineWithdrawal() {
+        UUID online = join().getUniqueId();
+        UUID poor = UUID.randomUUID();
+        UUID receiver = UUID.randomUUID();
+        plugin.setBalance(poor, "money", BigDecimal.TEN);
+
+        assertThrows(IllegalStateException.class, () -> plugin.transfer(List.of(
+                new TransferLeg(online, receiver, "money", new BigDecimal("50")),
+                new TransferLeg(poor, receiver, "money", new BigDecimal("30")))));
+
+        assertBalance(online, START);
+        assertBalance(poor, BigDecimal.TEN);
+        assertBalance(receiver, START);
+    }
+
+    @Test
+    void transferBetweenOnlineAndOfflinePlayersMovesTheAmount() {
+        UUID online = join().getUniqueId();
+        UUID offline = UUID.randomUUID();
+
+        plugin.transfer(online, offline, "money", new BigDecimal("40"));
+        plugin.transfer(offline, online, "money", new BigDecimal("15"));
+
+        assertBalance(online, new BigDecimal("75"));
+        assertBalance(offline, new BigDecimal("125"));
+    }
+
+    @Test
+    void receiverQuittingMidTransferStillGetsTheAmount() throws Exception {
+        PlayerMock receiver = join();
+        UUID payer = UUID.randomUUID();
+        BigDecimal amount = new BigDecimal("30");
+
+        // The payer has no row yet, so the transfer creates it and stops in the hook
+        plugin.pause = true;
+        CompletableFuture<Void> transfer = CompletableFuture.runAsync(
+                () -> plugin.transfer(payer, receiver.getUniqueId(), "money", amount));
+        assertTrue(plugin.paused.await(10, TimeUnit.SECONDS));
+        plugin.pause = false;
+
+        plugin.onQuit(new PlayerQuitEvent(receiver, Component.empty(), PlayerQuitEvent.QuitReason.DISCONNECTED));
+        plugin.resume.countDown();
+        transfer.get(10, TimeUnit.SECONDS);
+
+        // An offline deposit waits for the quit save and returns what the database holds
+        assertEquals(0, START.add(amount).add(BigDecimal.ONE).compareTo(
+                plugin.deposit(receiver.getUniqueId(), "money", BigDecimal.ONE)));
+        assertBalance(payer, START.subtract(amount));
+    }
+
+    private PlayerMock join() {
+        PlayerMock player = server.addPlayer();
+        plugin.onPreLogin(new AsyncPlayerPreLoginEvent(player.getName(), InetAddress.getLoopbackAddress(), player.getUniqueId()));
+        return player;
+    }
+
+    private void assertBalance(UUID player, BigDecimal expected) {
+        BigDecimal balance = plugin.getBalance(player, "money");
+        assertEquals(0, expected.compareTo(balance), () -> "expected " + expected + " but was " + balance);
+    }
+
+    // The real plugin.yml, without the hard dependency on PlaceholderAPI
+    private static PluginDescriptionFile description() throws IOException, InvalidDescriptionException {
+        String yaml;
+        try (InputStream in = Objects.requireNonNull(TransferTest.class.getResourceAsStream("/plugin.yml"))) {
+            yaml = new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+        yaml = yaml.replaceAll("(?m)^depend:.*$", "")
+                .replaceAll("(?m)^main:.*$", "main: " + TestEconomy.class.getName());
+        return new PluginDescriptionFile(new StringReader(yaml));
+    }
+}
@@ -0,0 +1,105 @@
+package com.vitor.model;
+
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * The balance cells are compare-and-set loops; no change may get lost or overdraw under contention.
+ */
+class UserAccountTest {
+
+    private static final int THREADS = 8;
+    private static final int OPERATIONS = 10_000;
+
+    @ParameterizedTest
+    @ValueSource(booleans = {false, true})
+    void concurrentAddsAreNeverLost(boolean fixedPoint) throws InterruptedException {
+        UserAccount account = new UserAccount(registry(fixedPoint));
+
+        race(() -> {
+            for (int i = 0; i < OPERATIONS; i++) account.add(0, new BigDecimal("0.01"));
+        });
+
+        BigDecimal expected = new BigDecimal("0.01").multiply(BigDecimal.valueOf((long) THREADS * OPERATIONS));
+        assertEquals(0, expected.compareTo(account.getBalance(0)));
+        assertEquals((long) THREADS * OPERATIONS, account.getVersion(0));
+    }
+
+    @ParameterizedTest
+    @ValueSource(booleans = {false, true})
+    void concurrentWithdrawalsNeverOverdraw(boolean fixedPoint) throws InterruptedException {
+        UserAccount account = new UserAccount(registry(fixedPoint));
+        account.setBalance(0, new BigDecimal("100"));
+        AtomicInteger succeeded = new AtomicInteger();
+
+        race(() -> {
+            for (int i = 0; i < OPERATIONS; i++) {
+                if (account.tryWithdraw(0, BigDecimal.ONE) != null) succeeded.incrementAndGet();
+            }
+        });
+
+        assertEquals(100, succeeded.get());
+        assertEquals(0, BigDecimal.ZERO.compareTo(account.getBalance(0)));
+    }
+
+    @ParameterizedTest
+    @ValueSource(booleans = {false, true})
+    void changesDuringASaveStayDirty(boolean fixedPoint) throws InterruptedException {
+        UserAccount account = new UserAccount(registry(fixedPoint));
+        List<List<UserAccount.Snapshot>> saves = new ArrayList<>();
+
+        Thread saver = Thread.ofPlatform().start(() -> {
+            for (int i = 0; i < 1000; i++) {
+                List<UserAccount.Snapshot> dirty = account.collectDirty();
+                account.markSaved(dirty);
+                saves.add(dirty);
+            }
+        });
+        race(() -> {
+            for (int i = 0; i < OPERATIONS; i++) account.add(0, BigDecimal.ONE);
+        });
+        saver.join();
+
+        // Whatever the last save saw, anything after it is still waiting for the next one
+        List<UserAccount.Snapshot> last = account.collectDirty();
+        long persisted = saves.stream().flatMap(List::stream).mapToLong(UserAccount.Snapshot::version).max().orElse(0L);
+        long total = (long) THREADS * OPERATIONS;
+        if (persisted < total) {
+            assertEquals(1, last.size());
+            assertEquals(total, last.get(0).version());
+            assertEquals(0, BigDecimal.valueOf(total).compareTo(last.get(0).balance()));
+        } else {
+            assertEquals(0, last.size());
+        }
+    }
+
+    private static CurrencyRegistry registry(boolean fixedPoint) {
+        return new CurrencyRegistry(List.of("money"), List.of(2), fixedPoint);
+    }
+
+    private static void race(Runnable task) throws InterruptedException {
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < THREADS; i++) {
+            threads.add(Thread.ofPlatform().start(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                task.run();
+            }));
+        }
+        start.countDown();
+        for (Thread thread : threads) thread.join();
+    }
+}
@@ -0,0 +1,116 @@
+package com.vitor.storage;
+
+import com.vitor.model.UserAccount;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class AccountLoadCoalescerTest {
+
+    private TestDatabase fixture;
+    private DatabaseManager database;
+    private final ExecutorService executor = Executors.newFixedThreadPool(4);
+
+    @BeforeEach
+    void setUp() {
+        fixture = new TestDatabase();
+        database = fixture.open();
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        executor.shutdownNow();
+        fixture.close();
+    }
+
+    @Test
+    void loginStormWithinTheWindowIsOneQuery() throws Exception {
+        AccountLoadCoalescer loader = new AccountLoadCoalescer(database, TestDatabase.DEFAULT_BALANCES, 200L, 500, executor);
+        List<UUID> players = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            UUID player = UUID.randomUUID();
+            players.add(player);
+            database.setOffline(player, "money", BigDecimal.valueOf(i));
+        }
+
+        // Like the async pre-login threads of a server restart
+        CountDownLatch start = new CountDownLatch(1);
+        List<CompletableFuture<UserAccount>> loads = new ArrayList<>();
+        try (ExecutorService logins = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (UUID player : players) {
+                loads.add(CompletableFuture.supplyAsync(() -> {
+                    try {
+                        start.await();
+                    } catch (InterruptedException e) {
+                        throw new IllegalStateException(e);
+                    }
+                    return loader.load(player).join();
+                }, logins));
+            }
+            start.countDown();
+
+            for (int i = 0; i < players.size(); i++) {
+                UserAccount account = loads.get(i).get(5, TimeUnit.SECONDS);
+                assertEquals(0, BigDecimal.valueOf(i).compareTo(account.getBalance(0)));
+            }
+        }
+        assertEquals(1, fixture.queries("db.loadAccounts"));
+        loader.close();
+    }
+
+    @Test
+    void fullBatchDoesNotWaitForTheWindow() throws Exception {
+        AccountLoadCoalescer loader = new AccountLoadCoalescer(database, TestDatabase.DEFAULT_BALANCES, 60_000L, 2, executor);
+
+        CompletableFuture<UserAccount> first = loader.load(UUID.randomUUID());
+        CompletableFuture<UserAccount> second = loader.load(UUID.randomUUID());
+
+        // New players load with the start balances
+        assertEquals(0, TestDatabase.DEFAULT_BALANCES[0].compareTo(first.get(5, TimeUnit.SECONDS).getBalance(0)));
+        assertEquals(0, TestDatabase.DEFAULT_BALANCES[0].compareTo(second.get(5, TimeUnit.SECONDS).getBalance(0)));
+        loader.close();
+    }
+
+    @Test
+    void sameBatchLoadsOfAPlayerShareTheResult() throws Exception {
+        AccountLoadCoalescer loader = new AccountLoadCoalescer(database, TestDatabase.DEFAULT_BALANCES, 50L, 500, executor);
+        UUID player = UUID.randomUUID();
+
+        CompletableFuture<UserAccount> first = loader.load(player);
+        CompletableFuture<UserAccount> second = loader.load(player);
+
+        assertSame(first, second);
+        assertSame(first.get(5, TimeUnit.SECONDS), second.get(5, TimeUnit.SECONDS));
+        loader.close();
+    }
+
+    @Test
+    void closeFailsWhatIsStillWaiting() {
+        AccountLoadCoalescer loader = new AccountLoadCoalescer(database, TestDatabase.DEFAULT_BALANCES, 60_000L, 500, executor);
+        CompletableFuture<UserAccount> waiting = loader.load(UUID.randomUUID());
+
+        loader.close();
+
+        Throwable failure = assertThrows(Exception.class, waiting::join).getCause();
+        assertInstanceOf(RejectedExecutionException.class, failure);
+        assertTrue(waiting.isCompletedExceptionally());
+        assertEquals(0, fixture.queries("db.loadAccounts"));
+    }
+}
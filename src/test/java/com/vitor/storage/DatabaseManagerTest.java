@@ -0,0 +1,175 @@
+package com.vitor.storage;
+
+import com.vitor.api.TransactionRecord;
+import com.vitor.model.UserAccount;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class DatabaseManagerTest {
+
+    private static final BigDecimal START = TestDatabase.DEFAULT_BALANCES[0];
+
+    private TestDatabase fixture;
+    private DatabaseManager database;
+
+    @BeforeEach
+    void setUp() {
+        fixture = new TestDatabase();
+        database = fixture.open();
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        fixture.close();
+    }
+
+    @Test
+    void offlineTransactionRollsBackWhenAWithdrawalIsNotCovered() {
+        UUID payer = UUID.randomUUID();
+        UUID receiver = UUID.randomUUID();
+        database.setOffline(payer, "money", new BigDecimal("10"));
+
+        // Whatever order the rows are touched in, nothing may stick once the withdrawal fails
+        List<BigDecimal> settled = database.applyOffline(List.of(
+                new StorageBackend.OfflineChange(receiver, "money", new BigDecimal("30"), START),
+                new StorageBackend.OfflineChange(payer, "money", new BigDecimal("-30"), START)));
+
+        assertNull(settled);
+        assertBalance(payer, "10");
+        assertEquals(UserAccount.NO_ROW, database.loadAccount(receiver, TestDatabase.DEFAULT_BALANCES).getStoredVersion(0));
+        assertTrue(fixture.createdRows.isEmpty(), "a rolled back row must not count toward the supply");
+    }
+
+    @Test
+    void offlineTransactionAppliesEveryChange() {
+        UUID payer = UUID.randomUUID();
+        UUID receiver = UUID.randomUUID();
+        database.setOffline(payer, "money", new BigDecimal("50"));
+
+        List<BigDecimal> settled = database.applyOffline(List.of(
+                new StorageBackend.OfflineChange(payer, "money", new BigDecimal("-30"), START),
+                new StorageBackend.OfflineChange(receiver, "money", new BigDecimal("30"), START)));
+
+        assertEquals(0, new BigDecimal("20").compareTo(settled.get(0)));
+        assertEquals(0, new BigDecimal("130").compareTo(settled.get(1)));
+        assertBalance(payer, "20");
+        assertBalance(receiver, "130");
+        // Only the receiver's row was created from the start balance
+        assertEquals(0, START.compareTo(fixture.createdRows.get("money")));
+    }
+
+    @Test
+    void concurrentOfflineDepositsAreNeverLost() throws InterruptedException {
+        UUID player = UUID.randomUUID();
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            threads.add(Thread.ofPlatform().start(() -> {
+                for (int j = 0; j < 25; j++) database.depositOffline(player, "money", BigDecimal.ONE, START);
+            }));
+        }
+        for (Thread thread : threads) thread.join();
+
+        assertBalance(player, "200");
+    }
+
+    @Test
+    void offlineWithdrawalFromANewRowStartsFromTheStartBalance() {
+        UUID player = UUID.randomUUID();
+
+        assertNull(database.withdrawOffline(player, "money", new BigDecimal("150"), START));
+        assertEquals(0, new BigDecimal("60").compareTo(database.withdrawOffline(player, "money", new BigDecimal("40"), START)));
+        assertBalance(player, "60");
+    }
+
+    @Test
+    void bulkDepositCreatesMissingRowsFromTheStartBalance() {
+        UUID known = UUID.randomUUID();
+        UUID fresh = UUID.randomUUID();
+        database.setOffline(known, "money", new BigDecimal("5"));
+
+        Map<UUID, BigDecimal> settled = database.depositAllOffline("money", Map.of(
+                known, new BigDecimal("1"), fresh, new BigDecimal("1")), START);
+
+        assertEquals(0, new BigDecimal("6").compareTo(settled.get(known)));
+        assertEquals(0, new BigDecimal("101").compareTo(settled.get(fresh)));
+        assertEquals(0, START.compareTo(fixture.createdRows.get("money")));
+    }
+
+    @Test
+    void saveFromAStaleLoadMergesInsteadOfOverwriting() {
+        UUID player = UUID.randomUUID();
+        database.setOffline(player, "money", new BigDecimal("100"));
+
+        // Two servers loaded the same row, then both changed it
+        UserAccount first = database.loadAccount(player, TestDatabase.DEFAULT_BALANCES);
+        UserAccount second = database.loadAccount(player, TestDatabase.DEFAULT_BALANCES);
+        first.add(0, new BigDecimal("10"));
+        second.add(0, new BigDecimal("-3"));
+        database.saveAccount(player, first);
+        database.saveAccount(player, second);
+
+        assertBalance(player, "107");
+        // The losing save took over the other server's change, and reported it
+        assertEquals(0, new BigDecimal("107").compareTo(second.getBalance(0)));
+        assertEquals(0, new BigDecimal("10").compareTo(fixture.remoteChanges.get(player)));
+    }
+
+    @Test
+    void firstSaveOfANewAccountCountsItsStartBalance() {
+        UUID player = UUID.randomUUID();
+        UserAccount account = database.loadAccount(player, TestDatabase.DEFAULT_BALANCES);
+        account.add(0, new BigDecimal("5"));
+        database.saveAccount(player, account);
+
+        assertBalance(player, "105");
+        assertEquals(0, START.compareTo(fixture.createdRows.get("money")));
+    }
+
+    @Test
+    void historyCopyKeepsEveryRecordAndItsId() throws Exception {
+        UUID player = UUID.randomUUID();
+        UUID other = UUID.randomUUID();
+        List<TransactionRecord> written = new ArrayList<>();
+        // More than one scan page
+        for (int i = 0; i < 250; i++) {
+            written.add(new TransactionRecord(0L, 1_000L + i, i % 2 == 0 ? player : other, i % 5 == 0 ? other : null,
+                    "money", TransactionRecord.Type.DEPOSIT, BigDecimal.valueOf(i), BigDecimal.valueOf(i * 2L)));
+        }
+        database.insertHistory(written);
+
+        try (TestDatabase targetFixture = new TestDatabase()) {
+            DatabaseManager target = targetFixture.open();
+            int[] pages = {0};
+            database.scanHistory(100, records -> {
+                target.importHistory(records);
+                pages[0]++;
+            });
+
+            assertEquals(3, pages[0]);
+            assertEquals(database.loadHistory(player, null, Long.MAX_VALUE, 500), target.loadHistory(player, null, Long.MAX_VALUE, 500));
+            assertEquals(database.loadHistory(other, "money", Long.MAX_VALUE, 500), target.loadHistory(other, "money", Long.MAX_VALUE, 500));
+
+            // New records of the target continue after the copied ids
+            long lastCopied = target.loadHistory(other, null, Long.MAX_VALUE, 1).get(0).id();
+            target.insertHistory(List.of(new TransactionRecord(0L, 5_000L, other, null, "money",
+                    TransactionRecord.Type.WITHDRAW, BigDecimal.ONE, BigDecimal.ZERO)));
+            assertTrue(target.loadHistory(other, null, Long.MAX_VALUE, 1).get(0).id() > lastCopied);
+        }
+    }
+
+    private void assertBalance(UUID player, String expected) {
+        BigDecimal stored = database.loadAccount(player, TestDatabase.DEFAULT_BALANCES).getBalance(0);
+        assertEquals(0, new BigDecimal(expected).compareTo(stored), () -> "expected " + expected + " but was " + stored);
+    }
+}
@@ -0,0 +1,38 @@
+package com.vitor.storage;
+
+import com.vitor.model.UserAccount;
+import org.junit.jupiter.api.Test;
+
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+class OfflineAccountCacheTest {
+
+    private final OfflineAccountCache cache = new OfflineAccountCache(16, 60L);
+
+    @Test
+    void conditionalInvalidateOnlyDropsTheGivenAccount() {
+        UUID player = UUID.randomUUID();
+        UserAccount stale = new UserAccount(TestDatabase.REGISTRY);
+        UserAccount newer = new UserAccount(TestDatabase.REGISTRY);
+
+        // A load that lost the race must not drop what a quit put in meanwhile
+        cache.put(player, newer);
+        cache.invalidate(player, stale);
+        assertSame(newer, cache.get(player));
+
+        cache.invalidate(player, newer);
+        assertNull(cache.get(player));
+    }
+
+    @Test
+    void expiredEntriesAreMisses() {
+        OfflineAccountCache expiring = new OfflineAccountCache(16, 0L);
+        UUID player = UUID.randomUUID();
+        expiring.put(player, new UserAccount(TestDatabase.REGISTRY));
+
+        assertNull(expiring.get(player));
+    }
+}
@@ -0,0 +1,87 @@
+package com.vitor.storage;
+
+import com.vitor.metrics.Telemetry;
+import com.vitor.model.CurrencyRegistry;
+import com.vitor.model.UserAccount;
+import com.zaxxer.hikari.HikariConfig;
+
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+/**
+ * In-memory H2 in MariaDB mode, like the persistence benchmark, acting as the plugin towards the backend.
+ * Every instance is its own database, so tests never see each other's rows.
+ */
+final class TestDatabase implements StorageBackend.Host, AutoCloseable {
+
+    static final CurrencyRegistry REGISTRY = new CurrencyRegistry(List.of("money", "gems"), List.of(2, 2), false);
+    static final BigDecimal[] DEFAULT_BALANCES = {new BigDecimal("100.00"), BigDecimal.ZERO};
+
+    private static final AtomicInteger NEXT = new AtomicInteger();
+
+    final String url = "jdbc:h2:mem:veconomy-test-" + NEXT.incrementAndGet() + ";MODE=MariaDB;DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1";
+    final Telemetry telemetry = new Telemetry(REGISTRY, UserAccount.DEFAULT_METRICS_WINDOW);
+    // What the backend reported through the host callbacks
+    final Map<String, BigDecimal> createdRows = new ConcurrentHashMap<>();
+    final Map<UUID, BigDecimal> remoteChanges = new ConcurrentHashMap<>();
+    // Saves append their markers here when set
+    volatile TransactionJournal journal;
+
+    private final Logger logger = Logger.getLogger("vEconomy-test");
+    private DatabaseManager database;
+
+    /**
+     * Connects the backend, which creates (or migrates) the tables.
+     */
+    DatabaseManager open() {
+        HikariConfig config = new HikariConfig();
+        config.setJdbcUrl(url);
+        config.setMaximumPoolSize(4);
+        config.setPoolName("vEconomy-Test");
+        database = new DatabaseManager(this, config);
+        return database;
+    }
+
+    /**
+     * A plain connection, for setting up tables before the backend opens.
+     */
+    Connection connect() throws SQLException {
+        return DriverManager.getConnection(url);
+    }
+
+    long queries(String name) {
+        return telemetry.histogram(name).getCount();
+    }
+
+    @Override
+    public void close() throws SQLException {
+        if (database != null) database.close();
+        try (Connection conn = connect(); Statement statement = conn.createStatement()) {
+            statement.execute("SHUTDOWN");
+        }
+    }
+
+    @Override
+    public Logger getLogger() { return logger; }
+    @Override
+    public UserAccount newAccount() { return new UserAccount(REGISTRY); }
+    @Override
+    public boolean isLoggingEnabled() { return false; }
+    @Override
+    public TransactionJournal getJournal() { return journal; }
+    @Override
+    public Telemetry getTelemetry() { return telemetry; }
+    @Override
+    public void onRemoteChange(UUID uuid, UserAccount account, int currency, BigDecimal delta) { remoteChanges.merge(uuid, delta, BigDecimal::add); }
+    @Override
+    public void onRowsCreated(String currencyId, BigDecimal startBalances) { createdRows.merge(currencyId, startBalances, BigDecimal::add); }
+}
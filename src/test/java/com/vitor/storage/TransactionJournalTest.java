@@ -0,0 +1,197 @@
+package com.vitor.storage;
+
+import com.vitor.model.UserAccount;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.logging.Logger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TransactionJournalTest {
+
+    // The smallest segment the journal accepts, 1024 records
+    private static final int SMALL_SEGMENT = 128 * 1024;
+
+    @TempDir
+    File directory;
+
+    private final List<TransactionJournal> opened = new ArrayList<>();
+
+    @AfterEach
+    void tearDown() {
+        opened.forEach(TransactionJournal::close);
+    }
+
+    @Test
+    void replaysWhatACrashedRunNeverSaved() throws IOException {
+        TransactionJournal crashed = open(SMALL_SEGMENT);
+        UUID saved = UUID.randomUUID();
+        UUID unsaved = UUID.randomUUID();
+        UserAccount savedAccount = change(crashed, saved, "25");
+        UserAccount unsavedAccount = change(crashed, unsaved, "40");
+        save(crashed, saved, savedAccount);
+        unsavedAccount.add(0, new BigDecimal("15"));
+        crashed.recordBalance(unsaved, unsavedAccount, 0);
+
+        // The first run is never closed, like a killed JVM; the next one maps the same files
+        Map<UUID, Map<String, TransactionJournal.Unsaved>> pending = open(SMALL_SEGMENT).replay();
+
+        assertFalse(pending.containsKey(saved));
+        assertEquals(0, new BigDecimal("55").compareTo(pending.get(unsaved).get("money").balance()));
+    }
+
+    @Test
+    void changeAfterTheSaveIsReplayed() throws IOException {
+        TransactionJournal crashed = open(SMALL_SEGMENT);
+        UUID player = UUID.randomUUID();
+        UserAccount account = change(crashed, player, "10");
+        save(crashed, player, account);
+        account.add(0, new BigDecimal("5"));
+        crashed.recordBalance(player, account, 0);
+
+        Map<UUID, Map<String, TransactionJournal.Unsaved>> pending = open(SMALL_SEGMENT).replay();
+
+        assertEquals(0, new BigDecimal("15").compareTo(pending.get(player).get("money").balance()));
+    }
+
+    @Test
+    void smallerSegmentSizeKeepsEveryRecordOfTheOldSegments() throws IOException {
+        TransactionJournal crashed = open(SMALL_SEGMENT * 8);
+        Map<UUID, BigDecimal> expected = new HashMap<>();
+        // Far more records than fit in a segment of the new size
+        for (int i = 0; i < 5000; i++) {
+            UUID player = UUID.randomUUID();
+            change(crashed, player, Integer.toString(i + 1));
+            expected.put(player, new BigDecimal(i + 1));
+        }
+
+        Map<UUID, Map<String, TransactionJournal.Unsaved>> pending = open(SMALL_SEGMENT).replay();
+
+        assertEquals(expected.size(), pending.size());
+        expected.forEach((player, balance) -> assertEquals(0, balance.compareTo(pending.get(player).get("money").balance())));
+    }
+
+    @Test
+    void truncationKeepsUnsavedBalancesAndDropsSavedSegments() throws IOException {
+        TransactionJournal journal = open(SMALL_SEGMENT);
+        UUID unsaved = UUID.randomUUID();
+        UserAccount unsavedAccount = change(journal, unsaved, "7");
+
+        // Fill a few segments with accounts that get saved
+        List<UUID> players = new ArrayList<>();
+        List<UserAccount> accounts = new ArrayList<>();
+        for (int i = 0; i < 3000; i++) {
+            UUID player = UUID.randomUUID();
+            players.add(player);
+            accounts.add(change(journal, player, "1"));
+        }
+        for (int i = 0; i < players.size(); i++) save(journal, players.get(i), accounts.get(i));
+        journal.truncate();
+
+        assertTrue(segmentFiles() > 1, "the segment with the unsaved balance must stay");
+        Map<UUID, Map<String, TransactionJournal.Unsaved>> pending = journal.replay();
+        assertEquals(1, pending.size());
+        assertEquals(0, new BigDecimal("7").compareTo(pending.get(unsaved).get("money").balance()));
+
+        // Once the last one is saved, every full segment can go
+        save(journal, unsaved, unsavedAccount);
+        journal.truncate();
+
+        assertEquals(1, segmentFiles());
+        assertTrue(journal.replay().isEmpty());
+    }
+
+    @Test
+    void replayCarriesTheBalanceTheDatabaseHeld() throws IOException {
+        TransactionJournal crashed = open(SMALL_SEGMENT);
+        UUID player = UUID.randomUUID();
+        UserAccount account = new UserAccount(TestDatabase.REGISTRY);
+        account.setBalance(0, new BigDecimal("30"));
+        account.setStored(0, new BigDecimal("30"), 4L);
+        account.markAllSaved();
+        crashed.recordLoaded(player, account);
+        account.add(0, new BigDecimal("12"));
+        crashed.recordBalance(player, account, 0);
+
+        TransactionJournal.Unsaved unsaved = open(SMALL_SEGMENT).replay().get(player).get("money");
+
+        assertEquals(0, new BigDecimal("42").compareTo(unsaved.balance()));
+        assertEquals(0, new BigDecimal("30").compareTo(unsaved.stored()));
+    }
+
+    @Test
+    void recoveryKeepsWhatAnotherServerWroteAfterTheCrash() throws Exception {
+        try (TestDatabase fixture = new TestDatabase()) {
+            DatabaseManager database = fixture.open();
+            TransactionJournal crashed = open(SMALL_SEGMENT);
+            fixture.journal = crashed;
+            UUID player = UUID.randomUUID();
+            database.setOffline(player, "money", new BigDecimal("100"));
+
+            // Loaded, saved once, then changed again before the crash
+            UserAccount account = database.loadAccount(player, TestDatabase.DEFAULT_BALANCES);
+            crashed.recordLoaded(player, account);
+            account.add(0, new BigDecimal("20"));
+            crashed.recordBalance(player, account, 0);
+            database.saveAccount(player, account);
+            account.add(0, new BigDecimal("5"));
+            crashed.recordBalance(player, account, 0);
+
+            // A new player who never reached the database
+            UUID newcomer = UUID.randomUUID();
+            UserAccount fresh = database.loadAccount(newcomer, TestDatabase.DEFAULT_BALANCES);
+            crashed.recordLoaded(newcomer, fresh);
+            fresh.add(0, new BigDecimal("10"));
+            crashed.recordBalance(newcomer, fresh, 0);
+
+            // Another server of the network changes both rows while this one is down
+            fixture.journal = null;
+            database.depositOffline(player, "money", new BigDecimal("50"), TestDatabase.DEFAULT_BALANCES[0]);
+            database.depositOffline(newcomer, "money", new BigDecimal("50"), TestDatabase.DEFAULT_BALANCES[0]);
+
+            TransactionJournal restarted = open(SMALL_SEGMENT);
+            assertEquals(2, restarted.recover(database, Map.of("money", TestDatabase.DEFAULT_BALANCES[0], "gems", BigDecimal.ZERO)));
+
+            assertEquals(0, new BigDecimal("175").compareTo(database.loadAccount(player, TestDatabase.DEFAULT_BALANCES).getBalance(0)));
+            assertEquals(0, new BigDecimal("160").compareTo(database.loadAccount(newcomer, TestDatabase.DEFAULT_BALANCES).getBalance(0)));
+        }
+    }
+
+    private TransactionJournal open(int segmentBytes) throws IOException {
+        TransactionJournal journal = new TransactionJournal(directory, segmentBytes, 10L, Logger.getLogger("vEconomy-test"));
+        journal.open();
+        opened.add(journal);
+        return journal;
+    }
+
+    // A new account of the player, changed once and journaled
+    private static UserAccount change(TransactionJournal journal, UUID player, String amount) {
+        UserAccount account = new UserAccount(TestDatabase.REGISTRY);
+        account.add(0, new BigDecimal(amount));
+        journal.recordBalance(player, account, 0);
+        return account;
+    }
+
+    private static void save(TransactionJournal journal, UUID player, UserAccount account) {
+        List<UserAccount.Snapshot> dirty = account.collectDirty();
+        journal.recordSaved(player, account, dirty);
+        account.markSaved(dirty);
+    }
+
+    private int segmentFiles() {
+        File[] files = directory.listFiles((dir, name) -> name.endsWith(".wal"));
+        return files == null ? 0 : files.length;
+    }
+}
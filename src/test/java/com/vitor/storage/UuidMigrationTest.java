@@ -0,0 +1,130 @@
+package com.vitor.storage;
+
+import com.vitor.model.UserAccount;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tables written by versions before BINARY(16) UUIDs, which also had no version column.
+ */
+class UuidMigrationTest {
+
+    // More than one copy chunk
+    private static final int PLAYERS = 1200;
+
+    private TestDatabase fixture;
+    private final List<UUID> players = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() throws SQLException {
+        fixture = new TestDatabase();
+        try (Connection conn = fixture.connect(); Statement statement = conn.createStatement()) {
+            statement.execute("""
+                CREATE TABLE balances (
+                    uuid VARCHAR(36) NOT NULL,
+                    currency_id VARCHAR(32) NOT NULL,
+                    amount DECIMAL(30, 4) NOT NULL DEFAULT 0,
+                    PRIMARY KEY (uuid, currency_id)
+                )
+            """);
+            try (PreparedStatement ps = conn.prepareStatement("INSERT INTO balances (uuid, currency_id, amount) VALUES (?, ?, ?)")) {
+                for (int i = 0; i < PLAYERS; i++) {
+                    UUID player = UUID.randomUUID();
+                    players.add(player);
+                    ps.setString(1, player.toString());
+                    ps.setString(2, "money");
+                    ps.setBigDecimal(3, BigDecimal.valueOf(i));
+                    ps.addBatch();
+                    ps.setString(1, player.toString());
+                    ps.setString(2, "gems");
+                    ps.setBigDecimal(3, BigDecimal.ONE);
+                    ps.addBatch();
+                }
+                ps.setString(1, "not-a-uuid");
+                ps.setString(2, "money");
+                ps.setBigDecimal(3, BigDecimal.TEN);
+                ps.addBatch();
+                ps.executeBatch();
+            }
+        }
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        fixture.close();
+    }
+
+    @Test
+    void convertsTextUuidsAndKeepsEveryBalance() throws SQLException {
+        DatabaseManager database = fixture.open();
+
+        try (Connection conn = fixture.connect()) {
+            try (ResultSet columns = conn.getMetaData().getColumns(conn.getCatalog(), null, "balances", "uuid")) {
+                assertTrue(columns.next());
+                int type = columns.getInt("DATA_TYPE");
+                assertNotEquals(Types.VARCHAR, type);
+                assertNotEquals(Types.CHAR, type);
+            }
+            try (ResultSet tables = conn.getMetaData().getTables(conn.getCatalog(), null, "balances_%", null)) {
+                assertFalse(tables.next(), "the temporary tables of the migration must be gone");
+            }
+            try (Statement statement = conn.createStatement();
+                 ResultSet rs = statement.executeQuery("SELECT COUNT(*) FROM balances")) {
+                assertTrue(rs.next());
+                // Every valid row, without the one whose UUID could not be parsed
+                assertEquals(PLAYERS * 2L, rs.getLong(1));
+            }
+        }
+
+        Map<UUID, UserAccount> loaded = database.loadAccounts(players, TestDatabase.DEFAULT_BALANCES);
+        for (int i = 0; i < PLAYERS; i++) {
+            UserAccount account = loaded.get(players.get(i));
+            assertEquals(0, BigDecimal.valueOf(i).compareTo(account.getBalance(0)));
+            assertEquals(0, BigDecimal.ONE.compareTo(account.getBalance(1)));
+            assertEquals(0L, account.getStoredVersion(0), "the version column is added before the copy");
+        }
+    }
+
+    @Test
+    void migratedTableTakesWritesAndLeaderboardReads() {
+        DatabaseManager database = fixture.open();
+        UUID richest = players.get(PLAYERS - 1);
+
+        database.depositOffline(richest, "money", new BigDecimal("5"), TestDatabase.DEFAULT_BALANCES[0]);
+
+        Map<UUID, BigDecimal> top = database.loadTop("money", 1);
+        assertEquals(0, BigDecimal.valueOf(PLAYERS - 1 + 5).compareTo(top.get(richest)));
+    }
+
+    @Test
+    void reopeningAMigratedTableLeavesItAlone() throws SQLException {
+        fixture.open().close();
+        DatabaseManager database = fixture.open();
+
+        assertEquals(0, BigDecimal.valueOf(7).compareTo(database.loadAccount(players.get(7), TestDatabase.DEFAULT_BALANCES).getBalance(0)));
+        try (Connection conn = fixture.connect();
+             Statement statement = conn.createStatement();
+             ResultSet rs = statement.executeQuery("SELECT COUNT(*) FROM balances")) {
+            assertTrue(rs.next());
+            assertEquals(PLAYERS * 2L, rs.getLong(1));
+        }
+    }
+}